@@ -0,0 +1,47 @@
+package com.example.bank.config;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Payment commands published by the store on store_exchange.
+ * The result goes back to the reply-to queue of each command, so the bank needs no queue of the store's.
+ */
+@Configuration
+public class RabbitMQConfig {
+
+    public static final String STORE_EXCHANGE = "store_exchange";
+    public static final String BANK_PAYMENT_QUEUE = "bank_payment_queue";
+    public static final String BANK_PAYMENT_KEY = "bank.payment";
+
+    @Bean
+    public TopicExchange storeExchange() {
+        return new TopicExchange(STORE_EXCHANGE);
+    }
+
+    @Bean
+    public Queue bankPaymentQueue() {
+        return QueueBuilder.durable(BANK_PAYMENT_QUEUE).build();
+    }
+
+    @Bean
+    public Binding bankPaymentBinding(Queue bankPaymentQueue, TopicExchange storeExchange) {
+        return BindingBuilder
+                .bind(bankPaymentQueue)
+                .to(storeExchange)
+                .with(BANK_PAYMENT_KEY);
+    }
+
+    // POJO to json
+    @Bean
+    public MessageConverter jsonMessageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.bank.messaging;
+
+import com.example.bank.config.RabbitMQConfig;
+import com.example.bank.dto.request.PaymentRequest;
+import com.example.bank.dto.response.PaymentResponse;
+import com.example.bank.service.BankService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Payment over RabbitMQ, the same operation as POST /api/bank/payment.
+ * The returned response is published to the command's reply-to queue under its correlation id;
+ * a refused payment is a FAILED reply, never a redelivery, so the store always hears back once.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentCommandConsumer {
+
+    private final BankService bankService;
+
+    @RabbitListener(queues = RabbitMQConfig.BANK_PAYMENT_QUEUE, concurrency = "${bank.payment.consumers:4}")
+    public PaymentResponse handlePayment(PaymentRequest request) {
+        log.info("Received payment command for order {}", request.getOrderId());
+        try {
+            return bankService.processPayment(request);
+        } catch (RuntimeException e) {
+            log.warn("Payment command for order {} refused: {}", request.getOrderId(), e.getMessage());
+            return PaymentResponse.failure(null, e.getMessage(), request.getAmount(), request.getOrderId());
+        }
+    }
+}
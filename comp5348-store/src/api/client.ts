@@ -1,7 +1,7 @@
 import axios from 'axios';
 
 // Prefer the new VITEAPIURL env var, fall back to older names for compatibility
-const apiBaseUrl =
+export const apiBaseUrl =
   (import.meta.env.VITEAPIURL as string | undefined) ??
   (import.meta.env.VITE_API_BASE_URL as string | undefined) ??
   (import.meta.env.VITE_API_URL as string | undefined) ??
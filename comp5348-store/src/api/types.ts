@@ -34,22 +34,59 @@ export interface AvailabilityResponse {
   }> | null;
 }
 
+export interface OrderLineRequest {
+  productId: number;
+  quantity: number;
+}
+
+// either productId + quantity for a single product, or lines for a cart
 export interface OrderRequest {
   username: string;
+  productId?: number;
+  quantity?: number;
+  lines?: OrderLineRequest[];
+  totalAmount: number;
+}
+
+export interface OrderLineResponse {
   productId: number;
   quantity: number;
-  totalAmount: number;
+  warehouseIds?: number[] | null;
 }
 
 export interface OrderResponse {
   orderId: number;
   username: string;
-  productId: number;
+  productId?: number | null;
   quantity: number;
   totalAmount: number;
   status: string;
   bankTransactionId?: string | null;
   warehouseIds?: number[] | null;
+  lines?: OrderLineResponse[] | null;
+  createdAt?: string | null;
+  updatedAt?: string | null;
+}
+
+export type SagaStatus =
+  | 'STARTED'
+  | 'USER_VALIDATED'
+  | 'INVENTORY_AVAILABLE'
+  | 'INVENTORY_RESERVED'
+  | 'ORDER_CREATED'
+  | 'PAYMENT_COMPLETED'
+  | 'DELIVERY_REQUESTED'
+  | 'COMPLETED'
+  | 'COMPENSATING'
+  | 'COMPENSATED'
+  | 'FAILED';
+
+export interface OrderSagaResponse {
+  sagaId: number;
+  status: SagaStatus;
+  currentStep: string;
+  orderId?: number | null;
+  errorMessage?: string | null;
   createdAt?: string | null;
   updatedAt?: string | null;
 }
@@ -67,3 +104,28 @@ export interface ProductStockResponse {
     quantity: number;
   }>;
 }
+
+export interface OrderSummaryResponse {
+  orderId: number;
+  username: string;
+  productId?: number | null;
+  quantity: number;
+  totalAmount: number;
+  status: string;
+  bankTransactionId?: string | null;
+  createdAt: string;
+  updatedAt?: string | null;
+}
+
+// GET /api/orders/users/{userId}/history?status=&from=&to=&cursor=&limit=
+export interface OrderHistoryResponse {
+  items: OrderSummaryResponse[];
+  nextCursor: string | null;
+}
+
+// order-status events from GET /api/orders/users/{userId}/events
+export interface OrderStatusUpdate {
+  orderId: number;
+  status: string;
+  updatedAt: string;
+}
@@ -7,8 +7,8 @@ import {
   useState,
 } from 'react';
 import type { ReactNode } from 'react';
-import apiClient from '../api/client';
-import type { OrderResponse } from '../api/types';
+import apiClient, { apiBaseUrl } from '../api/client';
+import type { OrderResponse, OrderStatusUpdate } from '../api/types';
 import { useAuth } from './AuthContext';
 
 type OrdersContextValue = {
@@ -76,6 +76,78 @@ export const OrdersProvider = ({
     }
   }, [orders, user]);
 
+  // status changes are pushed over server-sent events instead of polling each order.
+  // EventSource cannot send the Authorization header, so the stream is read with fetch.
+  useEffect(() => {
+    if (!user || !token) {
+      return;
+    }
+    const controller = new AbortController();
+    let retryTimer: number | undefined;
+
+    const applyUpdate = (update: OrderStatusUpdate) => {
+      setOrders((prev) =>
+        prev.map((order) =>
+          order.orderId === update.orderId
+            ? { ...order, status: update.status, updatedAt: update.updatedAt }
+            : order,
+        ),
+      );
+    };
+
+    const connect = async () => {
+      try {
+        const response = await fetch(
+          `${apiBaseUrl}/api/orders/users/${user.userId}/events`,
+          {
+            headers: {
+              Accept: 'text/event-stream',
+              Authorization: `Bearer ${token}`,
+            },
+            signal: controller.signal,
+          },
+        );
+        if (!response.ok || !response.body) {
+          throw new Error(`Order status stream failed: ${response.status}`);
+        }
+        const reader = response.body.getReader();
+        const decoder = new TextDecoder();
+        let buffer = '';
+        for (;;) {
+          const { value, done } = await reader.read();
+          if (done) {
+            break;
+          }
+          buffer += decoder.decode(value, { stream: true });
+          const frames = buffer.split('\n\n');
+          buffer = frames.pop() ?? '';
+          for (const frame of frames) {
+            const lines = frame.split('\n');
+            const isStatus = lines.some((line) => line === 'event:order-status');
+            const data = lines
+              .filter((line) => line.startsWith('data:'))
+              .map((line) => line.slice(5))
+              .join('\n');
+            if (isStatus && data) {
+              applyUpdate(JSON.parse(data) as OrderStatusUpdate);
+            }
+          }
+        }
+      } catch {
+        // fall through to reconnect unless the component unmounted
+      }
+      if (!controller.signal.aborted) {
+        retryTimer = window.setTimeout(connect, 3000);
+      }
+    };
+
+    connect();
+    return () => {
+      controller.abort();
+      window.clearTimeout(retryTimer);
+    };
+  }, [user, token]);
+
   const addOrder = useCallback((order: OrderResponse) => {
     setOrders((prev) => normaliseOrders([order, ...prev]));
   }, []);
@@ -1,7 +1,12 @@
 import { useEffect, useMemo, useRef, useState } from 'react';
 import type { FormEvent } from 'react';
 import apiClient from '../api/client';
-import type { OrderRequest, OrderResponse, ProductStockResponse } from '../api/types';
+import type {
+  OrderRequest,
+  OrderResponse,
+  OrderSagaResponse,
+  ProductStockResponse,
+} from '../api/types';
 import { useAuth } from '../context/AuthContext';
 import { useOrders } from '../context/OrdersContext';
 
@@ -10,6 +15,31 @@ const formatter = new Intl.NumberFormat('en-AU', {
   currency: 'AUD',
 });
 
+const SAGA_POLL_INTERVAL_MS = 1000;
+const SAGA_POLL_ATTEMPTS = 60;
+
+const sleep = (ms: number) =>
+  new Promise<void>((resolve) => window.setTimeout(resolve, ms));
+
+// the store accepts the order with 202 and runs the saga in the background,
+// so poll the saga until it either completes or is compensated
+const waitForSaga = async (sagaId: number): Promise<OrderSagaResponse> => {
+  for (let attempt = 0; attempt < SAGA_POLL_ATTEMPTS; attempt += 1) {
+    const { data } = await apiClient.get<OrderSagaResponse>(
+      `/api/orders/sagas/${sagaId}`,
+    );
+    if (
+      data.status === 'COMPLETED' ||
+      data.status === 'COMPENSATED' ||
+      data.status === 'FAILED'
+    ) {
+      return data;
+    }
+    await sleep(SAGA_POLL_INTERVAL_MS);
+  }
+  throw new Error(`Order saga ${sagaId} did not finish in time`);
+};
+
 const CatalogPage = () => {
   const { user, token } = useAuth();
   const { addOrder, requestRefund } = useOrders();
@@ -91,9 +121,29 @@ const CatalogPage = () => {
     };
 
     try {
-      const { data } = await apiClient.post<OrderResponse>(
-        '/api/orders',
-        payload,
+      // one key per checkout: a retry after a lost response joins the saga
+      // the first attempt started instead of placing a second order
+      const idempotencyKey = crypto.randomUUID();
+      const submit = () =>
+        apiClient.post<OrderSagaResponse>('/api/orders', payload, {
+          headers: { 'Idempotency-Key': idempotencyKey },
+        });
+      const { data: accepted } = await submit().catch((submitError) => {
+        if (submitError?.response) {
+          throw submitError;
+        }
+        return submit();
+      });
+      const saga = await waitForSaga(accepted.sagaId);
+      if (saga.status !== 'COMPLETED' || saga.orderId == null) {
+        // eslint-disable-next-line no-console
+        console.error('order saga failed', saga);
+        setError('error when creating order');
+        fetchAvailability();
+        return;
+      }
+      const { data } = await apiClient.get<OrderResponse>(
+        `/api/orders/${saga.orderId}`,
       );
       addOrder(data);
       setQuantities((prev) => ({ ...prev, [product.productId]: 1 }));
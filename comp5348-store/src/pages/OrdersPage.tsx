@@ -158,7 +158,10 @@ const OrdersPage = () => {
               <dl>
                 <div>
                   <dt>Product ID</dt>
-                  <dd>{order.productId}</dd>
+                  <dd>
+                    {order.productId ??
+                      (order.lines ?? []).map((line) => `${line.productId} x${line.quantity}`).join(', ')}
+                  </dd>
                 </div>
                 <div>
                   <dt>Quantity</dt>
@@ -50,7 +50,7 @@
     CREATE TABLE IF NOT EXISTS orders (
         order_id SERIAL PRIMARY KEY,
         user_id INT NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
-        product_id INT NOT NULL REFERENCES products(product_id) ON DELETE CASCADE,
+        product_id INT REFERENCES products(product_id) ON DELETE CASCADE,
         quantity INT NOT NULL CHECK (quantity > 0),
         total_amount DECIMAL(10,2) NOT NULL CHECK (total_amount >= 0),
         status VARCHAR(50) NOT NULL DEFAULT 'PENDING',
@@ -63,6 +63,21 @@
 
     CREATE INDEX IF NOT EXISTS idx_orders_user_id ON orders(user_id);
     CREATE INDEX IF NOT EXISTS idx_orders_status  ON orders(status);
+    -- keyset order history, newest first per user
+    CREATE INDEX IF NOT EXISTS idx_orders_user_created ON orders(user_id, created_at, order_id);
+
+    -- ====================
+    -- ORDER LINES TABLE (one row per product in a cart order)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS order_lines (
+        order_line_id SERIAL PRIMARY KEY,
+        order_id INT NOT NULL REFERENCES orders(order_id) ON DELETE CASCADE,
+        product_id INT NOT NULL REFERENCES products(product_id) ON DELETE CASCADE,
+        quantity INT NOT NULL CHECK (quantity > 0),
+        warehouse_ids VARCHAR(200)
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_order_lines_order_id ON order_lines(order_id);
 
 
     -- ====================
@@ -73,7 +88,7 @@
         order_id INT UNIQUE REFERENCES orders(order_id) ON DELETE CASCADE,
         status VARCHAR(50) NOT NULL,
         current_step VARCHAR(100) NOT NULL,
-        product_id INT NOT NULL,
+        product_id INT,
         quantity INT NOT NULL,
         bank_transaction_id VARCHAR(100),
         error_message TEXT,
@@ -82,4 +97,120 @@
         );
 
     CREATE INDEX IF NOT EXISTS idx_saga_order_id ON order_saga_state(order_id);
-    CREATE INDEX IF NOT EXISTS idx_saga_status ON order_saga_state(status);
\ No newline at end of file
+    CREATE INDEX IF NOT EXISTS idx_saga_status ON order_saga_state(status);
+    CREATE INDEX IF NOT EXISTS idx_saga_status_updated_at ON order_saga_state(status, updated_at);
+
+
+    -- ====================
+    -- SAGA TRANSITION LOG (append-only, order_saga_state is derived from it)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS saga_transition (
+        transition_id BIGSERIAL PRIMARY KEY,
+        saga_id BIGINT NOT NULL,
+        status VARCHAR(50) NOT NULL,
+        step VARCHAR(100) NOT NULL,
+        order_id INT,
+        bank_transaction_id VARCHAR(100),
+        error_message TEXT,
+        occurred_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_saga_transition_saga ON saga_transition(saga_id, transition_id);
+
+
+    -- ====================
+    -- INVENTORY RESERVATIONS (stock held per order until confirmed, released on expiry)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS inventory_reservation (
+        order_id INT PRIMARY KEY,
+        status VARCHAR(20) NOT NULL,
+        expires_at TIMESTAMP NOT NULL,
+        created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+        updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_inventory_reservation_held ON inventory_reservation(status) WHERE status = 'HELD';
+
+
+    -- ====================
+    -- ORDER VIEW (denormalised read model, written from order events)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS order_view (
+        order_id INT PRIMARY KEY,
+        user_id INT,
+        username VARCHAR(50),
+        product_id INT,
+        quantity INT NOT NULL,
+        total_amount DECIMAL(10,2) NOT NULL,
+        status VARCHAR(50) NOT NULL,
+        bank_transaction_id VARCHAR(100),
+        warehouse_ids VARCHAR(200),
+        lines TEXT,
+        created_at TIMESTAMP,
+        updated_at TIMESTAMP
+        );
+
+
+    -- ====================
+    -- ORDER IDEMPOTENCY (Idempotency-Key of POST /api/orders -> saga it started)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS order_idempotency (
+        username VARCHAR(50) NOT NULL,
+        idempotency_key VARCHAR(255) NOT NULL,
+        request_hash VARCHAR(64) NOT NULL,
+        saga_id BIGINT NOT NULL,
+        created_at TIMESTAMP NOT NULL,
+        expires_at TIMESTAMP NOT NULL,
+        PRIMARY KEY (username, idempotency_key)
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_order_idempotency_expires ON order_idempotency(expires_at);
+
+    -- ====================
+    -- REFUND RETRY (refunds the bank could not take yet, drained in the background)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS refund_retry (
+        order_id INT PRIMARY KEY,
+        reason VARCHAR(500),
+        status VARCHAR(20) NOT NULL,
+        attempts INT NOT NULL DEFAULT 0,
+        next_attempt_at TIMESTAMP NOT NULL,
+        last_error VARCHAR(500),
+        created_at TIMESTAMP NOT NULL,
+        updated_at TIMESTAMP NOT NULL
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_refund_retry_due ON refund_retry(next_attempt_at) WHERE status = 'PENDING';
+
+    -- ====================
+    -- OUTBOX (messages written with the changes they announce, published by the relay)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS outbox_message (
+        id BIGSERIAL PRIMARY KEY,
+        exchange VARCHAR(100) NOT NULL,
+        routing_key VARCHAR(100) NOT NULL,
+        payload_type VARCHAR(255) NOT NULL,
+        payload TEXT NOT NULL,
+        order_id INT,
+        status VARCHAR(20) NOT NULL,
+        attempts INT NOT NULL DEFAULT 0,
+        available_at TIMESTAMP NOT NULL,
+        last_error VARCHAR(500),
+        created_at TIMESTAMP NOT NULL,
+        sent_at TIMESTAMP
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_outbox_message_pending ON outbox_message(id) WHERE status = 'PENDING';
+    CREATE INDEX IF NOT EXISTS idx_outbox_message_sent ON outbox_message(sent_at) WHERE status = 'SENT';
+
+    -- ====================
+    -- DELIVERY SCHEDULE (delivery requests held back until due_at, then moved to the outbox)
+    -- ====================
+    CREATE TABLE IF NOT EXISTS delivery_schedule (
+        order_id INT PRIMARY KEY,
+        due_at TIMESTAMP NOT NULL,
+        payload TEXT NOT NULL,
+        created_at TIMESTAMP NOT NULL
+        );
+
+    CREATE INDEX IF NOT EXISTS idx_delivery_schedule_due ON delivery_schedule(due_at);
\ No newline at end of file
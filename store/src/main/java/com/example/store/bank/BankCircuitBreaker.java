@@ -0,0 +1,165 @@
+package com.example.store.bank;
+
+import com.example.store.exception.BankUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Guards every call to the bank with a semaphore bulkhead and a count based circuit breaker.
+ * The bulkhead caps concurrent bank calls so a slow bank ties up at most that many saga threads.
+ * The breaker opens when failure-rate-percent of the last window-size calls failed or were slower than
+ * slow-call-ms; after open-ms it lets half-open-calls trial calls through and closes again only if all succeed.
+ * Rejected calls throw BankUnavailableException without touching the network.
+ */
+@Component
+@Slf4j
+public class BankCircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final Semaphore bulkhead;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final long openMs;
+    private final int halfOpenCalls;
+    private final Counter rejectedOpen;
+    private final Counter rejectedBulkhead;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public BankCircuitBreaker(MeterRegistry meterRegistry,
+                              @Value("${store.bank.circuit.window-size:20}") int windowSize,
+                              @Value("${store.bank.circuit.minimum-calls:10}") int minimumCalls,
+                              @Value("${store.bank.circuit.failure-rate-percent:50}") int failureRatePercent,
+                              @Value("${store.bank.circuit.slow-call-ms:3000}") long slowCallMs,
+                              @Value("${store.bank.circuit.open-ms:10000}") long openMs,
+                              @Value("${store.bank.circuit.half-open-calls:3}") int halfOpenCalls,
+                              @Value("${store.bank.bulkhead.max-concurrent:20}") int maxConcurrent) {
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallNanos = slowCallMs * 1_000_000;
+        this.openMs = openMs;
+        this.halfOpenCalls = halfOpenCalls;
+        this.outcomes = new boolean[windowSize];
+        this.rejectedOpen = Counter.builder("store.bank.calls.rejected").tag("reason", "circuit-open").register(meterRegistry);
+        this.rejectedBulkhead = Counter.builder("store.bank.calls.rejected").tag("reason", "bulkhead-full").register(meterRegistry);
+        Gauge.builder("store.bank.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        Gauge.builder("store.bank.bulkhead.available", bulkhead, Semaphore::availablePermits).register(meterRegistry);
+    }
+
+    public <T> T call(String operation, Supplier<T> call) {
+        if (!bulkhead.tryAcquire()) {
+            rejectedBulkhead.increment();
+            throw new BankUnavailableException("Bank " + operation + " rejected, too many bank calls in flight");
+        }
+        try {
+            if (!tryAcquirePermission()) {
+                rejectedOpen.increment();
+                throw new BankUnavailableException("Bank " + operation + " rejected, bank circuit is open");
+            }
+            long start = System.nanoTime();
+            try {
+                T result = call.get();
+                record(System.nanoTime() - start < slowCallNanos);
+                return result;
+            } catch (RuntimeException e) {
+                // a 4xx or a refused payment is an answer from a healthy bank
+                record(!(e instanceof RestClientException) || e instanceof HttpClientErrorException);
+                throw e;
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State state() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    private synchronized void record(boolean success) {
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                transition(State.OPEN);
+            } else if (++halfOpenSuccesses == halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a call admitted before the circuit opened
+            return;
+        }
+
+        if (recorded == windowSize) {
+            if (!outcomes[next]) failures--;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = success;
+        if (!success) failures++;
+        next = (next + 1) % windowSize;
+
+        if (recorded >= minimumCalls && failures * 100 >= failureRatePercent * recorded) {
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(State target) {
+        log.warn("Bank circuit {} -> {}", state, target);
+        state = target;
+        switch (target) {
+            case OPEN -> openedAt = System.currentTimeMillis();
+            case HALF_OPEN -> {
+                halfOpenPermits = halfOpenCalls;
+                halfOpenSuccesses = 0;
+            }
+            case CLOSED -> {
+                next = 0;
+                recorded = 0;
+                failures = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.store.bank;
+
+import com.example.store.config.RabbitMQConfig;
+import com.example.store.dto.request.BankPaymentRequest;
+import com.example.store.dto.response.BankPaymentResponse;
+import com.example.store.exception.BankUnavailableException;
+import com.example.store.messaging.CustomCorrelationData;
+import com.example.store.service.OrderService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payment over RabbitMQ: the command goes to bank_payment_queue with a correlation id and this
+ * instance's reply queue, and the returned future completes when the bank's result comes back.
+ * Pending payments are kept in memory, at most max-pending of them, each for reply-timeout-ms.
+ * The command expires in the broker after the same time, so a bank that catches up does not pay
+ * orders the saga already gave up on; a success that still arrives late is refunded through the retry queue.
+ */
+@Component
+@Slf4j
+public class BankPaymentGateway {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AnonymousQueue replyQueue;
+    private final OrderService orderService;
+    private final RefundRetryQueue refundRetryQueue;
+    private final long replyTimeoutMs;
+    private final int maxPending;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    public BankPaymentGateway(RabbitTemplate rabbitTemplate,
+                              @Qualifier("bankPaymentReplyQueue") AnonymousQueue replyQueue,
+                              OrderService orderService,
+                              RefundRetryQueue refundRetryQueue,
+                              MeterRegistry meterRegistry,
+                              @Value("${store.bank.payment.reply-timeout-ms:10000}") long replyTimeoutMs,
+                              @Value("${store.bank.payment.max-pending:1000}") int maxPending) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.replyQueue = replyQueue;
+        this.orderService = orderService;
+        this.refundRetryQueue = refundRetryQueue;
+        this.replyTimeoutMs = replyTimeoutMs;
+        this.maxPending = maxPending;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bank-payment-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("store.bank.payment.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    public CompletableFuture<BankPaymentResponse> requestPayment(BankPaymentRequest request) {
+        if (pending.size() >= maxPending) {
+            return CompletableFuture.failedFuture(
+                    new BankUnavailableException("Bank payment rejected, too many payments awaiting a reply"));
+        }
+        String correlationId = UUID.randomUUID().toString();
+        CompletableFuture<BankPaymentResponse> reply = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = timer.schedule(() -> expire(correlationId), replyTimeoutMs, TimeUnit.MILLISECONDS);
+        pending.put(correlationId, new Pending(request.getOrderId(), reply, timeout));
+
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.STORE_EXCHANGE, RabbitMQConfig.BANK_PAYMENT_KEY, request,
+                    message -> {
+                        message.getMessageProperties().setCorrelationId(correlationId);
+                        message.getMessageProperties().setReplyTo(replyQueue.getName());
+                        message.getMessageProperties().setExpiration(String.valueOf(replyTimeoutMs));
+                        return message;
+                    },
+                    CustomCorrelationData.builder()
+                            .id(correlationId)
+                            .queueType(RabbitMQConfig.BANK_PAYMENT_QUEUE)
+                            .orderId(request.getOrderId())
+                            .build());
+        } catch (AmqpException e) {
+            pending.remove(correlationId);
+            timeout.cancel(false);
+            reply.completeExceptionally(new BankUnavailableException("Bank payment could not be sent: " + e.getMessage()));
+        }
+        return reply;
+    }
+
+    @RabbitListener(queues = "#{bankPaymentReplyQueue.name}")
+    public void handleReply(BankPaymentResponse response, @Header(AmqpHeaders.CORRELATION_ID) String correlationId) {
+        Pending waiting = pending.remove(correlationId);
+        if (waiting != null) {
+            waiting.timeout.cancel(false);
+            waiting.reply.complete(response);
+            return;
+        }
+        if ("SUCCESS".equals(response.getStatus())) {
+            // the saga already compensated without this payment, so the money goes back
+            Integer orderId = response.getOrderId();
+            log.warn("Late payment reply {} for order {}, refunding", correlationId, orderId);
+            if (orderId != null) {
+                orderService.updateBankTransactionId(orderId, response.getTransactionId());
+                refundRetryQueue.enqueue(orderId, "Payment reply arrived after the saga gave up");
+            }
+        } else {
+            log.info("Late payment reply {} ignored: {}", correlationId, response.getStatus());
+        }
+    }
+
+    private void expire(String correlationId) {
+        Pending waiting = pending.remove(correlationId);
+        if (waiting != null) {
+            waiting.reply.completeExceptionally(new BankUnavailableException(
+                    "No payment reply from the bank for order " + waiting.orderId + " within " + replyTimeoutMs + " ms"));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        pending.values().forEach(waiting -> waiting.reply.completeExceptionally(
+                new BankUnavailableException("Store is shutting down")));
+    }
+
+    private record Pending(Integer orderId, CompletableFuture<BankPaymentResponse> reply, ScheduledFuture<?> timeout) {
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.store.bank;
+
+import com.example.store.dto.response.BankRefundResponse;
+import com.example.store.exception.BankUnavailableException;
+import com.example.store.service.BankService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refunds that could not reach the bank, kept in store.refund_retry until they go through.
+ * A worker claims due rows with SKIP LOCKED, so several store instances can drain the queue together;
+ * a claim is a lease on next_attempt_at, a crashed worker's rows simply become due again.
+ * Attempts back off exponentially up to max-backoff-ms and stop at max-attempts (GAVE_UP, needs a person).
+ */
+@Component
+@Slf4j
+public class RefundRetryQueue {
+
+    private static final String ENQUEUE_SQL = """
+            INSERT INTO store.refund_retry (order_id, reason, status, attempts, next_attempt_at, created_at, updated_at)
+            VALUES (?, ?, 'PENDING', 0, ?, ?, ?)
+            ON CONFLICT (order_id) DO NOTHING
+            """;
+
+    private static final String CLAIM_SQL = """
+            UPDATE store.refund_retry r
+            SET next_attempt_at = ?, attempts = r.attempts + 1, updated_at = ?
+            WHERE r.order_id IN (
+                SELECT order_id FROM store.refund_retry
+                WHERE status = 'PENDING' AND next_attempt_at <= ?
+                ORDER BY next_attempt_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING r.order_id, r.attempts
+            """;
+
+    private static final String DONE_SQL = """
+            UPDATE store.refund_retry SET status = 'DONE', last_error = NULL, updated_at = ? WHERE order_id = ?
+            """;
+
+    private static final String FAILED_SQL = """
+            UPDATE store.refund_retry SET status = ?, next_attempt_at = ?, last_error = ?, updated_at = ? WHERE order_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BankService bankService;
+    private final long intervalMs;
+    private final int batchSize;
+    private final long leaseMs;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final int maxAttempts;
+    private ScheduledExecutorService worker;
+
+    public RefundRetryQueue(JdbcTemplate jdbcTemplate,
+                            @Lazy BankService bankService,
+                            @Value("${store.bank.refund-retry.interval-ms:5000}") long intervalMs,
+                            @Value("${store.bank.refund-retry.batch-size:20}") int batchSize,
+                            @Value("${store.bank.refund-retry.lease-ms:60000}") long leaseMs,
+                            @Value("${store.bank.refund-retry.base-backoff-ms:5000}") long baseBackoffMs,
+                            @Value("${store.bank.refund-retry.max-backoff-ms:600000}") long maxBackoffMs,
+                            @Value("${store.bank.refund-retry.max-attempts:20}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bankService = bankService;
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        this.leaseMs = leaseMs;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "refund-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::drain, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // durable once the caller's transaction commits, or at once outside of one; queuing an order twice is a no-op
+    public void enqueue(Integer orderId, String reason) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(ENQUEUE_SQL, orderId, truncate(reason), now, now, now);
+        log.warn("REFUND QUEUED order={} reason={}", orderId, reason);
+    }
+
+    private void drain() {
+        try {
+            long now = System.currentTimeMillis();
+            List<int[]> claimed = jdbcTemplate.query(CLAIM_SQL,
+                    (rs, rowNum) -> new int[]{rs.getInt("order_id"), rs.getInt("attempts")},
+                    new Timestamp(now + leaseMs), new Timestamp(now), new Timestamp(now), batchSize);
+            for (int[] row : claimed) {
+                if (!attempt(row[0], row[1])) {
+                    // the rest keep their lease and come back once it runs out
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Refund retry pass failed, will retry", e);
+        }
+    }
+
+    // false when the bank is still unavailable and the pass should stop
+    private boolean attempt(int orderId, int attempts) {
+        try {
+            BankRefundResponse response = bankService.refund(orderId);
+            if (response != null && "SUCCESS".equals(response.getStatus())) {
+                jdbcTemplate.update(DONE_SQL, new Timestamp(System.currentTimeMillis()), orderId);
+                log.info("REFUND RETRY succeeded order={} after {} attempts", orderId, attempts);
+                return true;
+            }
+            if (response != null && BankRefundResponse.NOT_PAID.equals(response.getStatus())) {
+                jdbcTemplate.update(DONE_SQL, new Timestamp(System.currentTimeMillis()), orderId);
+                log.info("REFUND RETRY order={} was never charged, nothing to refund", orderId);
+                return true;
+            }
+            failed(orderId, attempts, "Bank answered " + (response == null ? "nothing" : response.getStatus()));
+            return true;
+        } catch (HttpClientErrorException.Conflict e) {
+            // the bank refuses a second refund of an order, so an earlier attempt whose answer was lost went through
+            jdbcTemplate.update(DONE_SQL, new Timestamp(System.currentTimeMillis()), orderId);
+            log.info("REFUND RETRY order={} was already refunded by the bank", orderId);
+            return true;
+        } catch (BankUnavailableException e) {
+            failed(orderId, attempts, e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            failed(orderId, attempts, e.getMessage());
+            return true;
+        }
+    }
+
+    private void failed(int orderId, int attempts, String error) {
+        long now = System.currentTimeMillis();
+        long backoff = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempts - 1, 20));
+        String status = attempts >= maxAttempts ? "GAVE_UP" : "PENDING";
+        jdbcTemplate.update(FAILED_SQL, status, new Timestamp(now + backoff), truncate(error), new Timestamp(now), orderId);
+        if ("GAVE_UP".equals(status)) {
+            log.error("REFUND RETRY gave up order={} after {} attempts: {}", orderId, attempts, error);
+        } else {
+            log.warn("REFUND RETRY failed order={} attempt {}: {}", orderId, attempts, error);
+        }
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= 500 ? value : value.substring(0, 500);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.store.config;
+
+import com.example.store.inventory.allocation.AllocationStrategy;
+import com.example.store.inventory.allocation.FewestSplitsStrategy;
+import com.example.store.inventory.allocation.GreedyLargestStrategy;
+import com.example.store.inventory.allocation.NearestWarehouseStrategy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class AllocationConfig {
+
+    @Bean
+    public AllocationStrategy allocationStrategy(
+            @Value("${store.inventory.allocation.strategy:greedy-largest}") String strategy,
+            @Value("${store.inventory.allocation.warehouse-distances:}") String warehouseDistances) {
+        return switch (strategy) {
+            case GreedyLargestStrategy.NAME -> new GreedyLargestStrategy();
+            case FewestSplitsStrategy.NAME -> new FewestSplitsStrategy();
+            case NearestWarehouseStrategy.NAME -> new NearestWarehouseStrategy(parseDistances(warehouseDistances));
+            default -> throw new IllegalArgumentException("Unknown allocation strategy: " + strategy);
+        };
+    }
+
+    // "1:10,2:25" -> warehouse 1 at distance 10, warehouse 2 at distance 25
+    private static Map<Integer, Integer> parseDistances(String value) {
+        Map<Integer, Integer> distances = new HashMap<>();
+        for (String entry : value.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid warehouse distance: " + entry);
+            }
+            distances.put(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return distances;
+    }
+}
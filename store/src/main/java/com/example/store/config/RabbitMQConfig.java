@@ -6,11 +6,14 @@ import com.example.store.messaging.CustomCorrelationData;
 import com.example.store.service.EmailService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -25,6 +28,10 @@ public class RabbitMQConfig {
     public static final String EMAIL_QUEUE = "email_queue";
     public static final String DELIVERY_REQUEST_DLQ = "delivery_request_dlq";
     public static final String DELIVERY_ALERT_QUEUE = "delivery_alert_queue";
+    public static final String BANK_PAYMENT_QUEUE = "bank_payment_queue";
+
+    // LISTENER CONTAINER FACTORIES
+    public static final String DELIVERY_UPDATE_BATCH_FACTORY = "deliveryUpdateBatchFactory";
 
     // EXCHANGE
     public static final String STORE_EXCHANGE = "store_exchange";
@@ -37,6 +44,7 @@ public class RabbitMQConfig {
     public static final String DELIVERY_REQUEST_DLQ_KEY = "delivery.request.dlq";
     public static final String DELIVERY_UPDATE_DLQ_KEY = "delivery.update.dlq";
     public static final String EMAIL_KEY = "email_key";
+    public static final String BANK_PAYMENT_KEY = "bank.payment";
 
     // specific delivery key
     public static final String DELIVERY_UPDATE_RECIEVED =  "delivery.update.recieved";
@@ -144,6 +152,50 @@ public class RabbitMQConfig {
     }
 
 
+    // Queue 6 - bank payment commands, consumed by the bank
+    @Bean
+    public Queue bankPaymentQueue() {
+        return QueueBuilder.durable(BANK_PAYMENT_QUEUE).build();
+    }
+
+    @Bean
+    public Binding bankPaymentBinding(Queue bankPaymentQueue, TopicExchange storeExchange) {
+        return BindingBuilder
+                .bind(bankPaymentQueue)
+                .to(storeExchange)
+                .with(BANK_PAYMENT_KEY);
+    }
+
+    // Queue 7 - payment results for this instance only, the pending replies live in its memory
+    @Bean
+    public AnonymousQueue bankPaymentReplyQueue() {
+        return new AnonymousQueue();
+    }
+
+
+    // delivery updates are taken batch-size at a time by a single consumer, so a batch never overtakes
+    // an earlier one; acks are manual, the consumer acks a batch with one multiple ack
+    @Bean(name = DELIVERY_UPDATE_BATCH_FACTORY)
+    public SimpleRabbitListenerContainerFactory deliveryUpdateBatchFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${store.delivery.updates.batch-size:100}") int batchSize,
+            @Value("${store.delivery.updates.receive-timeout-ms:200}") long receiveTimeoutMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        // a partial batch is handed over once no message arrived for this long
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        factory.setPrefetchCount(batchSize * 2);
+        return factory;
+    }
+
+
     // POJO to json
     @Bean
     public MessageConverter jsonMessageConverter() {
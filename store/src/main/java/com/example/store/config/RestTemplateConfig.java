@@ -1,15 +1,100 @@
 package com.example.store.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class RestTemplateConfig {
 
+    // Store -> Bank calls: pooled keep-alive connections and hard deadlines, so a stalled bank cannot hold a saga thread.
+    // Built from RestTemplateBuilder so every call is timed as http.client.requests
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
-        return builder.build();
+    public RestTemplate bankRestTemplate(
+            RestTemplateBuilder builder,
+            MeterRegistry meterRegistry,
+            @Value("${store.bank.base-url:http://bank-app:8083}") String baseUrl,
+            @Value("${store.bank.http.connect-timeout-ms:1000}") long connectTimeoutMs,
+            @Value("${store.bank.http.read-timeout-ms:5000}") long readTimeoutMs,
+            @Value("${store.bank.http.pool-timeout-ms:500}") long poolTimeoutMs,
+            @Value("${store.bank.http.deadline-ms:8000}") long deadlineMs,
+            @Value("${store.bank.http.max-connections:50}") int maxConnections,
+            @Value("${store.bank.http.max-connections-per-route:50}") int maxConnectionsPerRoute,
+            @Value("${store.bank.http.idle-eviction-ms:30000}") long idleEvictionMs) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "bank", Tags.empty()).bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEvictionMs))
+                .evictExpiredConnections()
+                // payment and refund are not safe to replay blindly, the saga decides what happens after a failure
+                .disableAutomaticRetries()
+                .build();
+
+        return builder
+                .rootUri(baseUrl)
+                .requestFactory(() -> new DeadlineRequestFactory(httpClient, deadlineMs))
+                .build();
+    }
+
+    /**
+     * Connect and read timeouts bound each wait, not the whole call; a bank trickling bytes could
+     * still keep a request alive. Every request is therefore aborted once deadlineMs has passed.
+     * Aborting a request that already finished does nothing, so the timers are never cancelled.
+     */
+    static final class DeadlineRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+        private static final ScheduledExecutorService ABORTER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bank-http-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final long deadlineMs;
+
+        DeadlineRequestFactory(CloseableHttpClient httpClient, long deadlineMs) {
+            super(httpClient);
+            this.deadlineMs = deadlineMs;
+        }
+
+        @Override
+        protected void postProcessHttpRequest(ClassicHttpRequest request) {
+            if (request instanceof HttpUriRequestBase cancellable) {
+                ABORTER.schedule(cancellable::cancel, deadlineMs, TimeUnit.MILLISECONDS);
+            }
+        }
     }
 }
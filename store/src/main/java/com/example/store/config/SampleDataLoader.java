@@ -92,6 +92,120 @@ public class SampleDataLoader implements CommandLineRunner {
 
         jdbc.execute("CREATE INDEX IF NOT EXISTS idx_orders_user_id ON orders(user_id)");
         jdbc.execute("CREATE INDEX IF NOT EXISTS idx_orders_status ON orders(status)");
+        // keyset order history, newest first per user
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_orders_user_created ON orders(user_id, created_at, order_id)");
+
+        // cart orders keep their products in order_lines, so orders.product_id is only set for single product orders
+        jdbc.execute("ALTER TABLE store.orders ALTER COLUMN product_id DROP NOT NULL");
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.order_lines (
+                order_line_id SERIAL PRIMARY KEY,
+                order_id INT NOT NULL REFERENCES store.orders(order_id) ON DELETE CASCADE,
+                product_id INT NOT NULL REFERENCES store.products(product_id) ON DELETE CASCADE,
+                quantity INT NOT NULL CHECK (quantity > 0),
+                warehouse_ids VARCHAR(200)
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_order_lines_order_id ON store.order_lines(order_id)");
+
+        // append-only saga log, order_saga_state holds the latest transition of each saga
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.saga_transition (
+                transition_id BIGSERIAL PRIMARY KEY,
+                saga_id BIGINT NOT NULL,
+                status VARCHAR(50) NOT NULL,
+                step VARCHAR(100) NOT NULL,
+                order_id INT,
+                bank_transaction_id VARCHAR(100),
+                error_message TEXT,
+                occurred_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_saga_transition_saga ON store.saga_transition(saga_id, transition_id)");
+
+        // stock held per order until payment confirms it or the hold expires
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.inventory_reservation (
+                order_id INT PRIMARY KEY,
+                status VARCHAR(20) NOT NULL,
+                expires_at TIMESTAMP NOT NULL,
+                created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_inventory_reservation_held ON store.inventory_reservation(status) WHERE status = 'HELD'");
+
+        // read model of orders, written from order events only
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.order_view (
+                order_id INT PRIMARY KEY,
+                user_id INT,
+                username VARCHAR(50),
+                product_id INT,
+                quantity INT NOT NULL,
+                total_amount DECIMAL(10,2) NOT NULL,
+                status VARCHAR(50) NOT NULL,
+                bank_transaction_id VARCHAR(100),
+                warehouse_ids VARCHAR(200),
+                lines TEXT,
+                created_at TIMESTAMP,
+                updated_at TIMESTAMP
+            )
+        """);
+
+        // Idempotency-Key of POST /api/orders -> saga it started
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.order_idempotency (
+                username VARCHAR(50) NOT NULL,
+                idempotency_key VARCHAR(255) NOT NULL,
+                request_hash VARCHAR(64) NOT NULL,
+                saga_id BIGINT NOT NULL,
+                created_at TIMESTAMP NOT NULL,
+                expires_at TIMESTAMP NOT NULL,
+                PRIMARY KEY (username, idempotency_key)
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_order_idempotency_expires ON store.order_idempotency(expires_at)");
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.refund_retry (
+                order_id INT PRIMARY KEY,
+                reason VARCHAR(500),
+                status VARCHAR(20) NOT NULL,
+                attempts INT NOT NULL DEFAULT 0,
+                next_attempt_at TIMESTAMP NOT NULL,
+                last_error VARCHAR(500),
+                created_at TIMESTAMP NOT NULL,
+                updated_at TIMESTAMP NOT NULL
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_refund_retry_due ON store.refund_retry(next_attempt_at) WHERE status = 'PENDING'");
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.outbox_message (
+                id BIGSERIAL PRIMARY KEY,
+                exchange VARCHAR(100) NOT NULL,
+                routing_key VARCHAR(100) NOT NULL,
+                payload_type VARCHAR(255) NOT NULL,
+                payload TEXT NOT NULL,
+                order_id INT,
+                status VARCHAR(20) NOT NULL,
+                attempts INT NOT NULL DEFAULT 0,
+                available_at TIMESTAMP NOT NULL,
+                last_error VARCHAR(500),
+                created_at TIMESTAMP NOT NULL,
+                sent_at TIMESTAMP
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_outbox_message_pending ON store.outbox_message(id) WHERE status = 'PENDING'");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_outbox_message_sent ON store.outbox_message(sent_at) WHERE status = 'SENT'");
+        jdbc.execute("""
+            CREATE TABLE IF NOT EXISTS store.delivery_schedule (
+                order_id INT PRIMARY KEY,
+                due_at TIMESTAMP NOT NULL,
+                payload TEXT NOT NULL,
+                created_at TIMESTAMP NOT NULL
+            )
+        """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_delivery_schedule_due ON store.delivery_schedule(due_at)");
 
         // Upsert products (don’t need to overwrite price/name each boot, but safe if you want)
         jdbc.update("""
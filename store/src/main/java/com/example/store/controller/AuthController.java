@@ -6,6 +6,7 @@ import com.example.store.dto.response.LoginResponse;
 import com.example.store.dto.response.RegisterResponse;
 import com.example.store.entity.User;
 import com.example.store.security.JwtService;
+import com.example.store.security.PasswordHashingBusyException;
 import com.example.store.security.StoreUserDetails;
 import com.example.store.service.UserService;
 import jakarta.validation.Valid;
@@ -75,6 +76,11 @@ public class AuthController {
         return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
     }
 
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<String> handleHashingBusy(PasswordHashingBusyException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
     @ExceptionHandler(BadCredentialsException.class)
     public ResponseEntity<String> handleBadCredentials() {
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid username or password");
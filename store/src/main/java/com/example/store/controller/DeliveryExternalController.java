@@ -1,8 +1,10 @@
 package com.example.store.controller;
 
 
+import com.example.store.bank.RefundRetryQueue;
 import com.example.store.dto.request.DeliveryFailureAlert;
 import com.example.store.entity.DeliveryStatus;
+import com.example.store.exception.BankUnavailableException;
 import com.example.store.service.BankService;
 import com.example.store.service.EmailService;
 import com.example.store.service.OrderService;
@@ -21,10 +23,12 @@ public class DeliveryExternalController {
 
     private final OrderService orderService;
     private final BankService bankService;
+    private final RefundRetryQueue refundRetryQueue;
 
-    public DeliveryExternalController(OrderService orderService, BankService bankService) {
+    public DeliveryExternalController(OrderService orderService, BankService bankService, RefundRetryQueue refundRetryQueue) {
         this.orderService = orderService;
         this.bankService = bankService;
+        this.refundRetryQueue = refundRetryQueue;
     }
 
     @PostMapping("/alert")
@@ -33,7 +37,11 @@ public class DeliveryExternalController {
             log.info("ALERT: DELIVERY UPDATE SEND VIA RESTAPI SINCE MESSAGE BROKER IS ERROR FOR ORDER ID: {}", deliveryFailureAlert.getOrderId());
             orderService.updateStatus(deliveryFailureAlert.getOrderId(), deliveryFailureAlert.getDeliveryStatus());
             if (deliveryFailureAlert.getDeliveryStatus() == DeliveryStatus.LOST){
-                bankService.refund(deliveryFailureAlert.getOrderId());
+                try {
+                    bankService.refund(deliveryFailureAlert.getOrderId());
+                } catch (BankUnavailableException e) {
+                    refundRetryQueue.enqueue(deliveryFailureAlert.getOrderId(), "Delivery lost");
+                }
             }
             return  ResponseEntity.ok().build();
         }catch(Exception e){
@@ -1,17 +1,32 @@
 package com.example.store.controller;
 
+import com.example.store.dto.request.OrderHistoryQuery;
 import com.example.store.dto.request.OrderRequest;
+import com.example.store.dto.response.OrderHistoryResponse;
 import com.example.store.dto.response.OrderResponse;
+import com.example.store.dto.response.OrderSagaResponse;
 import com.example.store.entity.Order;
+import com.example.store.push.OrderStatusStreams;
+import com.example.store.security.JwtPrincipal;
+import com.example.store.service.BulkOrderService;
 import com.example.store.service.OrderOrchestrator;
 import com.example.store.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
 
 @RestController
@@ -20,11 +35,16 @@ import java.util.List;
 public class OrderController {
     private final OrderService orderService;
     private final OrderOrchestrator orderOrchestrator;
+    private final OrderStatusStreams orderStatusStreams;
+    private final BulkOrderService bulkOrderService;
 
 
-    public OrderController(OrderService orderService, OrderOrchestrator orderOrchestrator) {
+    public OrderController(OrderService orderService, OrderOrchestrator orderOrchestrator,
+                           OrderStatusStreams orderStatusStreams, BulkOrderService bulkOrderService) {
         this.orderService = orderService;
         this.orderOrchestrator = orderOrchestrator;
+        this.orderStatusStreams = orderStatusStreams;
+        this.bulkOrderService = bulkOrderService;
     }
 
     @GetMapping("/users/{userId}")
@@ -34,10 +54,49 @@ public class OrderController {
         return ResponseEntity.ok(orderResponses);
     }
 
+    // newest first, pass nextCursor back as cursor to get the following page
+    @GetMapping("/users/{userId}/history")
+    public ResponseEntity<OrderHistoryResponse> getOrderHistory(@PathVariable Integer userId, OrderHistoryQuery query) {
+        return ResponseEntity.ok(orderService.getOrderHistory(userId, query));
+    }
+
+    // server-sent order-status events for all of the user's orders, replaces polling GET /{orderId}
+    @GetMapping(value = "/users/{userId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrderStatus(@PathVariable Integer userId,
+                                        @AuthenticationPrincipal JwtPrincipal principal) {
+        // only the user's own stream; tokens issued before they carried the user id have to log in again
+        if (principal == null || !userId.equals(principal.id())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your order events");
+        }
+        return orderStatusStreams.subscribe(principal.id());
+    }
+
     @PostMapping
-    public ResponseEntity<OrderResponse> createOrder(@Valid @RequestBody OrderRequest request) {
+    public ResponseEntity<OrderSagaResponse> createOrder(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @Valid @RequestBody OrderRequest request) {
         log.info("Received order creation request: {}", request);
-        OrderResponse response = orderOrchestrator.executeOrderCreation(request);
+        OrderSagaResponse response = orderOrchestrator.startOrderCreation(request, idempotencyKey);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/orders/sagas/" + response.getSagaId()))
+                .body(response);
+    }
+
+    // JSON array or NDJSON of OrderRequests; one NDJSON BulkOrderResult per order comes back as each saga finishes
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> createOrders(InputStream body) throws IOException {
+        List<OrderRequest> requests = bulkOrderService.readOrders(body);
+        log.info("Received bulk order request with {} orders", requests.size());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> bulkOrderService.createOrders(requests, out));
+    }
+
+    @GetMapping("/sagas/{sagaId}")
+    public ResponseEntity<OrderSagaResponse> getSaga(@PathVariable Long sagaId) {
+        OrderSagaResponse response = orderOrchestrator.getSaga(sagaId);
         return ResponseEntity.ok(response);
     }
 
@@ -1,11 +1,18 @@
 package com.example.store.controller;
 
+import com.example.store.dto.request.ProductCatalogQuery;
+import com.example.store.dto.response.ProductPageResponse;
 import com.example.store.dto.response.ProductStockResponse;
+import com.example.store.dto.response.ProductStockSnapshot;
 import com.example.store.service.ProductInventoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -16,8 +23,27 @@ public class ProductInventoryController {
 
     private final ProductInventoryService productInventoryService;
 
+    // clients sending the last ETag back in If-None-Match get a 304 until some stock changes
     @GetMapping("/stock")
-    public List<ProductStockResponse> getProductStock() {
-        return productInventoryService.getProductStockSnapshot();
+    public ResponseEntity<List<ProductStockResponse>> getProductStock(WebRequest request) {
+        ProductStockSnapshot snapshot = productInventoryService.getVersionedProductStock();
+        String etag = "\"" + snapshot.version() + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(snapshot.products());
+    }
+
+    @GetMapping
+    public ProductPageResponse getProducts(ProductCatalogQuery query) {
+        return productInventoryService.getProductPage(query);
+    }
+
+    // whole filtered catalog as a chunked JSON array, memory use does not grow with the catalog
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamProducts(ProductCatalogQuery query) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> productInventoryService.streamProducts(query, out));
     }
 }
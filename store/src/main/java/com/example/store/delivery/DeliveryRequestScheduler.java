@@ -0,0 +1,160 @@
+package com.example.store.delivery;
+
+import com.example.store.config.RabbitMQConfig;
+import com.example.store.dto.request.DeliveryRequest;
+import com.example.store.entity.DeliveryStatus;
+import com.example.store.outbox.MessageOutbox;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery requests held back until store.delivery.request-delay-ms has passed, kept in store.delivery_schedule
+ * rather than in memory, so pending requests cost no heap and survive a restart.
+ * A poller takes due rows batch-size at a time with SKIP LOCKED and, in the same transaction, moves the
+ * requests of orders that were not cancelled meanwhile into the outbox.
+ */
+@Component
+@Slf4j
+public class DeliveryRequestScheduler {
+
+    // scheduling an order twice keeps the first due time
+    private static final String SCHEDULE_SQL = """
+            INSERT INTO store.delivery_schedule (order_id, due_at, payload, created_at)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (order_id) DO NOTHING
+            """;
+
+    private static final String TAKE_DUE_SQL = """
+            DELETE FROM store.delivery_schedule
+            WHERE order_id IN (
+                SELECT order_id FROM store.delivery_schedule
+                WHERE due_at <= ?
+                ORDER BY due_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING order_id, payload
+            """;
+
+    private static final String CANCELLED_SQL = """
+            SELECT id FROM store.orders WHERE id = ANY(?) AND status = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MessageOutbox messageOutbox;
+    private final long pollMs;
+    private final int batchSize;
+    private final Counter dispatched;
+    private final Counter dropped;
+    private ScheduledExecutorService poller;
+
+    public DeliveryRequestScheduler(JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    ObjectMapper objectMapper,
+                                    MessageOutbox messageOutbox,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${store.delivery.schedule.poll-ms:1000}") long pollMs,
+                                    @Value("${store.delivery.schedule.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.messageOutbox = messageOutbox;
+        this.pollMs = pollMs;
+        this.batchSize = batchSize;
+        this.dispatched = Counter.builder("store.delivery.schedule.dispatched").register(meterRegistry);
+        this.dropped = Counter.builder("store.delivery.schedule.cancelled").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "delivery-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::dispatchDue, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    // part of the caller's transaction
+    public void schedule(DeliveryRequest deliveryRequest, long dueAtMs) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(deliveryRequest);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Delivery request of order " + deliveryRequest.getOrderId() + " cannot be serialized", e);
+        }
+        jdbcTemplate.update(SCHEDULE_SQL, deliveryRequest.getOrderId(), new Timestamp(dueAtMs), payload,
+                new Timestamp(System.currentTimeMillis()));
+    }
+
+    private void dispatchDue() {
+        try {
+            int taken;
+            do {
+                taken = transactionTemplate.execute(status -> dispatchBatch());
+            } while (taken == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Delivery schedule pass failed, will retry", e);
+        }
+    }
+
+    private int dispatchBatch() {
+        List<DueRequest> due = jdbcTemplate.query(TAKE_DUE_SQL,
+                (rs, rowNum) -> new DueRequest(rs.getInt("order_id"), rs.getString("payload")),
+                new Timestamp(System.currentTimeMillis()), batchSize);
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        Integer[] orderIds = due.stream().map(DueRequest::orderId).toArray(Integer[]::new);
+        Set<Integer> cancelled = new HashSet<>(jdbcTemplate.query(CANCELLED_SQL,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("integer", orderIds));
+                    ps.setString(2, DeliveryStatus.CANCELLED.name());
+                },
+                (rs, rowNum) -> rs.getInt("id")));
+
+        for (DueRequest request : due) {
+            if (cancelled.contains(request.orderId)) {
+                log.info("DELIVERY REQUEST CANCELLED FOR ORDER {} BEFORE SENDING DELIVERY", request.orderId);
+                continue;
+            }
+            log.info("Sending delayed delivery request for order {}", request.orderId);
+            messageOutbox.addJson(RabbitMQConfig.STORE_EXCHANGE, RabbitMQConfig.DELIVERY_REQUEST_KEY,
+                    DeliveryRequest.class.getName(), request.payload, request.orderId);
+        }
+        dispatched.increment(due.size() - cancelled.size());
+        dropped.increment(cancelled.size());
+        return due.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private record DueRequest(int orderId, String payload) {
+    }
+}
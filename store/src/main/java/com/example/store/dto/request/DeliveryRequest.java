@@ -3,6 +3,7 @@ package com.example.store.dto.request;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 
@@ -15,4 +16,23 @@ public class DeliveryRequest {
     private String address;
     private Integer quantity;
     private List<Integer> warehouseIds;
+    private List<Line> lines;
+
+    // one per cart line, with the units each warehouse ships for it
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Line {
+        private Integer productId;
+        private Integer quantity;
+        private List<Allocation> allocations;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Allocation {
+        private Integer warehouseId;
+        private Integer quantity;
+    }
 }
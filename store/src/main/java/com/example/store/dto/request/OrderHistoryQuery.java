@@ -0,0 +1,19 @@
+package com.example.store.dto.request;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+// query parameters of /api/orders/users/{userId}/history, every filter is optional
+@Getter @Setter
+public class OrderHistoryQuery {
+    private String status;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private String cursor;
+    private Integer limit;
+}
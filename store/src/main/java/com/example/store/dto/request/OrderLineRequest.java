@@ -0,0 +1,21 @@
+package com.example.store.dto.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLineRequest {
+    @NotNull
+    private Integer productId;
+
+    @NotNull
+    @Min(1)
+    private Integer quantity;
+}
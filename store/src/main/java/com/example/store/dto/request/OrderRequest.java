@@ -1,24 +1,58 @@
 package com.example.store.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
 import lombok.Builder;
 import lombok.Data;
 
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Data
 @Builder
 public class OrderRequest {
     @NotNull
     private String username;
-    
-    @NotNull
+
+    // single product order, kept for clients that do not send a cart
     private Integer productId;
-    
-    @NotNull
+
     @Min(1)
     private Integer quantity;
-    
+
+    // cart order, one saga for every line
+    @Valid
+    private List<OrderLineRequest> lines;
+
     @NotNull
     private Double totalAmount;
+
+    @JsonIgnore
+    @AssertTrue(message = "Either productId and quantity or at least one order line is required")
+    public boolean isProductOrLinesPresent() {
+        boolean hasLines = lines != null && !lines.isEmpty();
+        boolean hasProduct = productId != null && quantity != null;
+        return hasLines != hasProduct;
+    }
+
+    // cart lines with repeated products merged, so each product is planned and reserved once
+    @JsonIgnore
+    public List<OrderLineRequest> resolveLines() {
+        if (lines == null || lines.isEmpty()) {
+            return List.of(new OrderLineRequest(productId, quantity));
+        }
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (OrderLineRequest line : lines) {
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        List<OrderLineRequest> merged = new ArrayList<>();
+        quantities.forEach((id, qty) -> merged.add(new OrderLineRequest(id, qty)));
+        return merged;
+    }
 }
@@ -0,0 +1,18 @@
+package com.example.store.dto.request;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+// query parameters of /api/products and /api/products/stream, every filter is optional
+@Getter @Setter
+public class ProductCatalogQuery {
+    // keyset cursor: only products with a larger id are returned
+    private Integer afterId;
+    private Integer limit;
+    private String name;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private Boolean inStock;
+}
@@ -19,14 +19,24 @@ public class ReleaseRequest {
         private Integer qty;
     }
 
-    public static ReleaseRequest createFromOrder(Order order) {
+    // one release per order line; orders placed before carts existed only carry the order level allocation
+    public static List<ReleaseRequest> createFromOrder(Order order) {
         if (order == null) {
             throw new IllegalArgumentException("Order cannot be null");
         }
-        if (order.getWarehouseIds() == null || order.getWarehouseIds().isEmpty()) {
+        if (order.getLines() == null || order.getLines().isEmpty()) {
+            return List.of(create(order.getId(), order.getProductId(), order.getWarehouseIds()));
+        }
+        return order.getLines().stream()
+                .map(line -> create(order.getId(), line.getProductId(), line.getWarehouseIds()))
+                .collect(Collectors.toList());
+    }
+
+    private static ReleaseRequest create(Integer orderId, Integer productId, List<Integer> warehouseIds) {
+        if (warehouseIds == null || warehouseIds.isEmpty()) {
             throw new IllegalArgumentException("Order has no warehouse allocations");
         }
-        Map<Integer, Long> warehouseQuantities = order.getWarehouseIds().stream()
+        Map<Integer, Long> warehouseQuantities = warehouseIds.stream()
                 .collect(Collectors.groupingBy(
                         warehouseId -> warehouseId,
                         Collectors.counting()
@@ -40,8 +50,8 @@ public class ReleaseRequest {
                 })
                 .collect(Collectors.toList());
         ReleaseRequest request = new ReleaseRequest();
-        request.setOrderId(order.getId());
-        request.setProductId(order.getProductId());
+        request.setOrderId(orderId);
+        request.setProductId(productId);
         request.setAllocations(allocations);
 
         return request;
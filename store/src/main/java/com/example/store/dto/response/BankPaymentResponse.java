@@ -7,4 +7,5 @@ public class BankPaymentResponse {
     private String status;
     private String transactionId;
     private String message;
+    private Integer orderId;
 }
\ No newline at end of file
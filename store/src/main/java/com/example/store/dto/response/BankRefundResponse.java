@@ -4,6 +4,8 @@ import lombok.Data;
 
 @Data
 public class BankRefundResponse {
+    public static final String NOT_PAID = "NOT_PAID";
+
     private String status;
     private String transactionId;
     private String message;
@@ -0,0 +1,12 @@
+package com.example.store.dto.response;
+
+import lombok.Data;
+
+// one row of GET /api/bank/order/{orderId}/transactions
+@Data
+public class BankTransactionResponse {
+    private String transactionId;
+    private String type;
+    private String status;
+    private Integer orderId;
+}
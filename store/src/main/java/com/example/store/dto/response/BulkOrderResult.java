@@ -0,0 +1,11 @@
+package com.example.store.dto.response;
+
+// one NDJSON line of POST /api/orders/bulk; index is the position of the order in the request
+public record BulkOrderResult(
+        int index,
+        Long sagaId,
+        Integer orderId,
+        String status,
+        String errorMessage
+) {
+}
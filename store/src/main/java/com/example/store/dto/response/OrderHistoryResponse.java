@@ -0,0 +1,14 @@
+package com.example.store.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+// nextCursor is passed back as cursor for the next (older) page, null on the last page
+@Data
+@Builder
+public class OrderHistoryResponse {
+    private List<OrderSummaryResponse> items;
+    private String nextCursor;
+}
@@ -0,0 +1,18 @@
+package com.example.store.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLineResponse {
+    private Integer productId;
+    private Integer quantity;
+    private List<Integer> warehouseIds;
+}
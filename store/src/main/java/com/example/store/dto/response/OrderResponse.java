@@ -18,6 +18,7 @@ public class OrderResponse {
     private String status;
     private String bankTransactionId;
     private List<Integer> warehouseIds;
+    private List<OrderLineResponse> lines;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
\ No newline at end of file
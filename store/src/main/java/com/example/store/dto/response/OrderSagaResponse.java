@@ -0,0 +1,19 @@
+package com.example.store.dto.response;
+
+import com.example.store.entity.SagaStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class OrderSagaResponse {
+    private Long sagaId;
+    private SagaStatus status;
+    private String currentStep;
+    private Integer orderId;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,11 @@
+package com.example.store.dto.response;
+
+import java.time.LocalDateTime;
+
+// pushed to /api/orders/users/{userId}/events as an order-status event
+public record OrderStatusUpdate(
+        Integer orderId,
+        String status,
+        LocalDateTime updatedAt
+) {
+}
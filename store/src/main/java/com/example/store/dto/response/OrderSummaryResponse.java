@@ -0,0 +1,21 @@
+package com.example.store.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// one row of the order history, read straight from SQL without loading Order entities
+@Data
+@Builder
+public class OrderSummaryResponse {
+    private Integer orderId;
+    private String username;
+    private Integer productId;
+    private Integer quantity;
+    private Double totalAmount;
+    private String status;
+    private String bankTransactionId;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,10 @@
+package com.example.store.dto.response;
+
+import java.util.List;
+
+// nextCursor is passed back as afterId for the next page, null on the last page
+public record ProductPageResponse(
+        List<ProductStockResponse> items,
+        Integer nextCursor
+) {
+}
@@ -0,0 +1,10 @@
+package com.example.store.dto.response;
+
+import java.util.List;
+
+// version changes whenever any product in the list does, the controller sends it as the ETag
+public record ProductStockSnapshot(
+        String version,
+        List<ProductStockResponse> products
+) {
+}
@@ -1,10 +1,23 @@
 package com.example.store.entity;
 
 public enum DeliveryStatus {
-    RECEIVED,
-    PICKED_UP,
-    ON_DELIVERY,
-    DELIVERED,
-    LOST,
-    CANCELLED
+    RECEIVED(0),
+    PICKED_UP(1),
+    ON_DELIVERY(2),
+    DELIVERED(3),
+    LOST(3),
+    CANCELLED(4);
+
+    // ranks of DELIVERED and above are final: an order never goes back to a lower rank or leaves a final status
+    public static final int FINAL_RANK = 3;
+
+    private final int rank;
+
+    DeliveryStatus(int rank) {
+        this.rank = rank;
+    }
+
+    public int rank() {
+        return rank;
+    }
 }
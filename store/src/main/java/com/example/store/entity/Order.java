@@ -10,7 +10,8 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
-@Table(name="orders", schema = "store")
+@Table(name="orders", schema = "store",
+        indexes = @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"))
 @Entity
 public class Order {
 
@@ -22,9 +23,11 @@ public class Order {
     @JoinColumn(name = "user_id")
     private User user;
 
+    // set for single product orders, null for carts with several products
     @Column(name = "product_id")
-    private int productId;
+    private Integer productId;
 
+    // total units across all lines
     @Column(name = "quantity")
     private int quantity;
 
@@ -44,6 +47,9 @@ public class Order {
     @Convert(converter = IntListToStringConverter.class)
     private List<Integer> warehouseIds;
 
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<OrderLine> lines = new ArrayList<>();
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -63,6 +69,14 @@ public class Order {
         status = builder.status;
         bankTransactionId = builder.bankTransactionId;
         warehouseIds = builder.warehouseIds;
+        if (builder.lines != null) {
+            builder.lines.forEach(this::addLine);
+        }
+    }
+
+    public void addLine(OrderLine line) {
+        line.setOrder(this);
+        lines.add(line);
     }
 
     public void setUser(User user){
@@ -88,7 +102,7 @@ public class Order {
         this.id = id;
     }
 
-    public void setProductId(int productId) {
+    public void setProductId(Integer productId) {
         this.productId = productId;
     }
 
@@ -120,7 +134,7 @@ public class Order {
         return user;
     }
 
-    public int getProductId() {
+    public Integer getProductId() {
         return productId;
     }
 
@@ -144,6 +158,10 @@ public class Order {
         return warehouseIds;
     }
 
+    public List<OrderLine> getLines() {
+        return lines;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -155,12 +173,13 @@ public class Order {
 
     public static final class Builder {
         private User user;
-        private int productId;
+        private Integer productId;
         private int quantity;
         private double totalAmount;
         private String status;
         private String bankTransactionId;
         private List<Integer> warehouseIds;
+        private List<OrderLine> lines;
 
         private Builder() {
         }
@@ -174,7 +193,7 @@ public class Order {
             return this;
         }
 
-        public Builder productId(int val) {
+        public Builder productId(Integer val) {
             productId = val;
             return this;
         }
@@ -204,6 +223,11 @@ public class Order {
             return this;
         }
 
+        public Builder lines(List<OrderLine> val) {
+            lines = val;
+            return this;
+        }
+
         public Order build() {
             return new Order(this);
         }
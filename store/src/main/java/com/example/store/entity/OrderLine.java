@@ -0,0 +1,104 @@
+package com.example.store.entity;
+
+
+import com.example.store.converter.IntListToStringConverter;
+import jakarta.persistence.*;
+
+import java.util.List;
+
+@Table(name = "order_lines", schema = "store")
+@Entity
+public class OrderLine {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "order_line_id")
+    private int id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_id", nullable = false)
+    private Order order;
+
+    @Column(name = "product_id", nullable = false)
+    private int productId;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+
+    // one entry per unit, same layout as Order.warehouseIds
+    @Column(name = "warehouse_ids")
+    @Convert(converter = IntListToStringConverter.class)
+    private List<Integer> warehouseIds;
+
+
+    public OrderLine() {
+
+    }
+
+    private OrderLine(Builder builder) {
+        productId = builder.productId;
+        quantity = builder.quantity;
+        warehouseIds = builder.warehouseIds;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public List<Integer> getWarehouseIds() {
+        return warehouseIds;
+    }
+
+    public void setWarehouseIds(List<Integer> warehouseIds) {
+        this.warehouseIds = warehouseIds;
+    }
+
+
+    public static final class Builder {
+        private int productId;
+        private int quantity;
+        private List<Integer> warehouseIds;
+
+        private Builder() {
+        }
+
+        public static Builder newBuilder() {
+            return new Builder();
+        }
+
+        public Builder productId(int val) {
+            productId = val;
+            return this;
+        }
+
+        public Builder quantity(int val) {
+            quantity = val;
+            return this;
+        }
+
+        public Builder warehouseIds(List<Integer> val) {
+            warehouseIds = val;
+            return this;
+        }
+
+        public OrderLine build() {
+            return new OrderLine(this);
+        }
+    }
+}
@@ -6,9 +6,12 @@ import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
-@Table(name = "order_saga_state")
+@Table(name = "order_saga_state",
+        indexes = @Index(name = "idx_saga_status_updated_at", columnList = "status, updated_at"))
 public class OrderSagaState {
 
     @Id
@@ -37,6 +40,9 @@ public class OrderSagaState {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    // steps taken since the last flush to the transition log
+    @Transient
+    private final List<SagaTransition> pendingTransitions = new ArrayList<>();
 
     public OrderSagaState() {
     }
@@ -71,6 +77,19 @@ public class OrderSagaState {
         this.currentStep = currentStep;
     }
 
+    public void advance(SagaStatus sagaStatus, String currentStep) {
+        setStatus(sagaStatus);
+        setCurrentStep(currentStep);
+        pendingTransitions.add(new SagaTransition(id, status, currentStep, orderId,
+                bankTransactionId, errorMessage, LocalDateTime.now()));
+    }
+
+    public List<SagaTransition> drainPendingTransitions() {
+        List<SagaTransition> drained = new ArrayList<>(pendingTransitions);
+        pendingTransitions.clear();
+        return drained;
+    }
+
     public Long getId() {
         return id;
     }
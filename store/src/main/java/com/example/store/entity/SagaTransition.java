@@ -0,0 +1,54 @@
+package com.example.store.entity;
+
+import java.time.LocalDateTime;
+
+// one row of the append-only store.saga_transition log, written with plain JDBC
+public class SagaTransition {
+
+    private final Long sagaId;
+    private final SagaStatus status;
+    private final String step;
+    private final Integer orderId;
+    private final String bankTransactionId;
+    private final String errorMessage;
+    private final LocalDateTime occurredAt;
+
+    public SagaTransition(Long sagaId, SagaStatus status, String step, Integer orderId,
+                          String bankTransactionId, String errorMessage, LocalDateTime occurredAt) {
+        this.sagaId = sagaId;
+        this.status = status;
+        this.step = step;
+        this.orderId = orderId;
+        this.bankTransactionId = bankTransactionId;
+        this.errorMessage = errorMessage;
+        this.occurredAt = occurredAt;
+    }
+
+    public Long getSagaId() {
+        return sagaId;
+    }
+
+    public SagaStatus getStatus() {
+        return status;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public Integer getOrderId() {
+        return orderId;
+    }
+
+    public String getBankTransactionId() {
+        return bankTransactionId;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+}
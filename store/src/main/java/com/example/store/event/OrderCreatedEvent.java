@@ -0,0 +1,8 @@
+package com.example.store.event;
+
+import com.example.store.entity.Order;
+
+// published by the saga once the order and its lines are committed; lines are already loaded,
+// the user may be a lazy reference, so its username comes along
+public record OrderCreatedEvent(Order order, String username) {
+}
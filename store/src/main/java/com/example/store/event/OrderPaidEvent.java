@@ -0,0 +1,4 @@
+package com.example.store.event;
+
+public record OrderPaidEvent(Integer orderId, String bankTransactionId) {
+}
@@ -0,0 +1,5 @@
+package com.example.store.event;
+
+// every order status change, whether it came from the saga, DeliveryCo or a refund
+public record OrderStatusChangedEvent(Integer orderId, Integer userId, String status) {
+}
@@ -0,0 +1,7 @@
+package com.example.store.event;
+
+import java.util.Set;
+
+// published after a reservation or release commits, for the products whose stock moved
+public record StockChangedEvent(Set<Integer> productIds) {
+}
@@ -0,0 +1,8 @@
+package com.example.store.exception;
+
+// the bank was not called: its circuit is open or too many calls are already waiting on it
+public class BankUnavailableException extends OrderSagaException {
+    public BankUnavailableException(String message) {
+        super(message);
+    }
+}
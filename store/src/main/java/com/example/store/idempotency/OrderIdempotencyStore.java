@@ -0,0 +1,182 @@
+package com.example.store.idempotency;
+
+import com.example.store.dto.request.OrderLineRequest;
+import com.example.store.dto.request.OrderRequest;
+import com.example.store.exception.OrderException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency-Key -> saga id for POST /api/orders, scoped per username.
+ * store.order_idempotency is the source of truth and is shared by all store instances; a bounded
+ * local LRU in front of it answers repeated retries without a query. Keys expire after ttl-ms.
+ */
+@Component
+@Slf4j
+public class OrderIdempotencyStore {
+
+    // an expired key is taken over as if it were new
+    private static final String CLAIM_SQL = """
+            INSERT INTO store.order_idempotency
+                (username, idempotency_key, request_hash, saga_id, created_at, expires_at)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (username, idempotency_key) DO UPDATE SET
+                request_hash = EXCLUDED.request_hash,
+                saga_id = EXCLUDED.saga_id,
+                created_at = EXCLUDED.created_at,
+                expires_at = EXCLUDED.expires_at
+            WHERE store.order_idempotency.expires_at < EXCLUDED.created_at
+            """;
+
+    private static final String FIND_SQL = """
+            SELECT request_hash, saga_id, expires_at
+            FROM store.order_idempotency
+            WHERE username = ? AND idempotency_key = ? AND expires_at > ?
+            """;
+
+    private static final String DELETE_SQL = """
+            DELETE FROM store.order_idempotency WHERE username = ? AND idempotency_key = ?
+            """;
+
+    private static final String PURGE_SQL = """
+            DELETE FROM store.order_idempotency WHERE expires_at < ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMs;
+    private final long purgeIntervalMs;
+    private final Map<String, Entry> local;
+    private ScheduledExecutorService purger;
+
+    public OrderIdempotencyStore(JdbcTemplate jdbcTemplate,
+                                 @Value("${store.orders.idempotency.ttl-ms:86400000}") long ttlMs,
+                                 @Value("${store.orders.idempotency.local-max-entries:10000}") int localMaxEntries,
+                                 @Value("${store.orders.idempotency.purge-interval-ms:600000}") long purgeIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMs = ttlMs;
+        this.purgeIntervalMs = purgeIntervalMs;
+        this.local = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > localMaxEntries;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-idempotency-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purgeExpired, purgeIntervalMs, purgeIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The saga a live key already belongs to.
+     * Throws when the key was used for a different order, so a reused key never hides a new purchase.
+     */
+    public Optional<Long> find(String username, String key, String requestHash) {
+        long now = System.currentTimeMillis();
+        String localKey = localKey(username, key);
+        Entry entry;
+        synchronized (local) {
+            entry = local.get(localKey);
+        }
+        if (entry == null || entry.expiresAtMs <= now) {
+            entry = jdbcTemplate.query(FIND_SQL,
+                    (rs, rowNum) -> new Entry(rs.getString("request_hash"), rs.getLong("saga_id"),
+                            rs.getTimestamp("expires_at").getTime()),
+                    username, key, new Timestamp(now)).stream().findFirst().orElse(null);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            synchronized (local) {
+                local.put(localKey, entry);
+            }
+        }
+        if (!entry.requestHash.equals(requestHash)) {
+            throw new OrderException("Idempotency-Key " + key + " was already used for a different order");
+        }
+        return Optional.of(entry.sagaId);
+    }
+
+    /**
+     * Binds the key to sagaId inside the caller's transaction.
+     * A concurrent request with the same key blocks on the row until this transaction ends; returns false
+     * when the key already belonged to another saga, which the caller then joins instead.
+     */
+    public boolean claim(String username, String key, String requestHash, Long sagaId) {
+        long now = System.currentTimeMillis();
+        return jdbcTemplate.update(CLAIM_SQL, username, key, requestHash, sagaId,
+                new Timestamp(now), new Timestamp(now + ttlMs)) == 1;
+    }
+
+    // lets a retry start over when the saga could not be launched at all
+    public void forget(String username, String key) {
+        synchronized (local) {
+            local.remove(localKey(username, key));
+        }
+        jdbcTemplate.update(DELETE_SQL, username, key);
+    }
+
+    // username, total and the merged cart; the same order sent twice hashes the same
+    public static String fingerprint(OrderRequest request, List<OrderLineRequest> lines) {
+        StringBuilder canonical = new StringBuilder(request.getUsername())
+                .append('|').append(request.getTotalAmount());
+        for (OrderLineRequest line : lines) {
+            canonical.append('|').append(line.getProductId()).append('x').append(line.getQuantity());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void purgeExpired() {
+        try {
+            int purged = jdbcTemplate.update(PURGE_SQL, new Timestamp(System.currentTimeMillis()));
+            if (purged > 0) {
+                log.info("Purged {} expired idempotency keys", purged);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Idempotency key purge failed, will retry", e);
+        }
+    }
+
+    private static String localKey(String username, String key) {
+        return username + '\u0000' + key;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    private record Entry(String requestHash, long sagaId, long expiresAtMs) {
+    }
+}
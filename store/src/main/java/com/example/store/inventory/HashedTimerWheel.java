@@ -0,0 +1,105 @@
+package com.example.store.inventory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel keyed by K. schedule and cancel are O(1) and safe from any thread;
+ * {@link #advance(long)} must only be called from the single ticking thread and returns
+ * the keys whose deadline has passed. Deadlines are rounded up to the next tick.
+ */
+public final class HashedTimerWheel<K> {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<LinkedList<Timeout<K>>> buckets;
+    private final Queue<Timeout<K>> pending = new ConcurrentLinkedQueue<>();
+    private final Map<K, Timeout<K>> byKey = new ConcurrentHashMap<>();
+    private final long startMs;
+    private long tick;
+
+    public HashedTimerWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new LinkedList<>());
+        }
+        this.startMs = startMs;
+    }
+
+    // replaces an earlier timeout for the same key
+    public void schedule(K key, long deadlineMs) {
+        Timeout<K> timeout = new Timeout<>(key, Math.max(0, (deadlineMs - startMs + tickMs - 1) / tickMs));
+        Timeout<K> previous = byKey.put(key, timeout);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        pending.add(timeout);
+    }
+
+    public void cancel(K key) {
+        Timeout<K> timeout = byKey.remove(key);
+        if (timeout != null) {
+            timeout.cancelled = true;
+        }
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    // processes every tick up to nowMs and returns the keys that expired on the way
+    public List<K> advance(long nowMs) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = (nowMs - startMs) / tickMs;
+        while (tick <= targetTick) {
+            transferPending();
+            Iterator<Timeout<K>> it = buckets.get((int) (tick & mask)).iterator();
+            while (it.hasNext()) {
+                Timeout<K> timeout = it.next();
+                if (timeout.cancelled) {
+                    it.remove();
+                } else if (timeout.deadlineTick <= tick) {
+                    it.remove();
+                    if (byKey.remove(timeout.key, timeout)) {
+                        expired.add(timeout.key);
+                    }
+                }
+                // otherwise it belongs to a later round of the wheel
+            }
+            tick++;
+        }
+        return expired;
+    }
+
+    private void transferPending() {
+        Timeout<K> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // overdue timeouts go into the bucket about to be processed
+            long slot = Math.max(timeout.deadlineTick, tick);
+            buckets.get((int) (slot & mask)).add(timeout);
+        }
+    }
+
+    private static final class Timeout<K> {
+        private final K key;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(K key, long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.store.inventory;
+
+import com.example.store.service.InventoryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives back stock held by orders that never got confirmed.
+ * Held reservations live in store.inventory_reservation and, in memory, on a hashed timer wheel;
+ * the table is only read once at startup, every tick after that just turns the wheel.
+ */
+@Component
+@Slf4j
+public class ReservationExpiry {
+
+    private static final String LOAD_HELD_SQL = """
+            SELECT order_id, expires_at
+            FROM store.inventory_reservation
+            WHERE status = 'HELD'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryService inventoryService;
+    private final long ttlMs;
+    private final long tickMs;
+    private final int batchSize;
+    private final HashedTimerWheel<Integer> wheel;
+    private ScheduledExecutorService ticker;
+    private ExecutorService releaser;
+
+    public ReservationExpiry(JdbcTemplate jdbcTemplate,
+                             @Lazy InventoryService inventoryService,
+                             @Value("${store.inventory.reservation.ttl-ms:600000}") long ttlMs,
+                             @Value("${store.inventory.reservation.tick-ms:1000}") long tickMs,
+                             @Value("${store.inventory.reservation.wheel-size:512}") int wheelSize,
+                             @Value("${store.inventory.reservation.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.inventoryService = inventoryService;
+        this.ttlMs = ttlMs;
+        this.tickMs = tickMs;
+        this.batchSize = batchSize;
+        this.wheel = new HashedTimerWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    // holds created by the previous run are put back on the wheel with whatever time they had left
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        List<Integer> restored = jdbcTemplate.query(LOAD_HELD_SQL, (rs, rowNum) -> {
+            int orderId = rs.getInt("order_id");
+            track(orderId, rs.getTimestamp("expires_at").getTime());
+            return orderId;
+        });
+
+        releaser = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "reservation-releaser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reservation-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("RESERVATION EXPIRY restored {} held reservations, ttl {} ms", restored.size(), ttlMs);
+    }
+
+    public void track(Integer orderId, long expiresAtMs) {
+        wheel.schedule(orderId, expiresAtMs);
+    }
+
+    public void untrack(Integer orderId) {
+        wheel.cancel(orderId);
+    }
+
+    public Timestamp nextExpiry() {
+        return new Timestamp(System.currentTimeMillis() + ttlMs);
+    }
+
+    private void tick() {
+        try {
+            List<Integer> expired = wheel.advance(System.currentTimeMillis());
+            if (expired.isEmpty()) {
+                return;
+            }
+            // releasing touches the database, keep it off the ticking thread
+            for (int from = 0; from < expired.size(); from += batchSize) {
+                List<Integer> batch = List.copyOf(expired.subList(from, Math.min(from + batchSize, expired.size())));
+                releaser.execute(() -> release(batch));
+            }
+        } catch (Exception e) {
+            log.error("RESERVATION EXPIRY tick failed", e);
+        }
+    }
+
+    private void release(List<Integer> orderIds) {
+        try {
+            List<Integer> released = inventoryService.releaseExpired(orderIds);
+            log.info("RESERVATION EXPIRY released {} of {} expired holds: {}", released.size(), orderIds.size(), released);
+        } catch (Exception e) {
+            // the rows are still HELD, try again on a later tick
+            log.error("RESERVATION EXPIRY could not release orders {}", orderIds, e);
+            long retryAt = System.currentTimeMillis() + tickMs * 10;
+            orderIds.forEach(orderId -> track(orderId, retryAt));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (releaser != null) {
+            releaser.shutdown();
+        }
+    }
+}
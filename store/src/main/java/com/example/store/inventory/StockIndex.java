@@ -0,0 +1,117 @@
+package com.example.store.inventory;
+
+import com.example.store.dto.request.ReleaseRequest;
+import com.example.store.entity.WarehouseStock;
+import com.example.store.repository.WarehouseStockRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per product, the warehouses that currently hold stock, used to plan without touching the database.
+ * A product is loaded on first use and then kept current from the reservations and releases
+ * InventoryServiceImpl commits. It is only a planning aid: reserve still works on locked rows,
+ * so a plan from a slightly stale entry at worst fails at reservation.
+ */
+@Component
+public class StockIndex {
+
+    private final WarehouseStockRepository repo;
+    private final Map<Integer, StockedWarehouses> products = new ConcurrentHashMap<>();
+
+    public StockIndex(WarehouseStockRepository repo) {
+        this.repo = repo;
+    }
+
+    // warehouses with stock per product, products without any stock map to an empty list
+    public Map<Integer, List<WarehouseStock>> stockedFor(Collection<Integer> productIds) {
+        Set<Integer> missing = new HashSet<>();
+        for (Integer productId : productIds) {
+            if (!products.containsKey(productId)) missing.add(productId);
+        }
+        if (!missing.isEmpty()) {
+            Map<Integer, List<int[]>> rows = new HashMap<>();
+            for (WarehouseStock ws : repo.findAllForProducts(missing)) {
+                rows.computeIfAbsent(ws.getProductId(), id -> new ArrayList<>())
+                        .add(new int[]{ws.getWarehouseId(), ws.getQuantity()});
+            }
+            for (Integer productId : missing) {
+                products.putIfAbsent(productId, StockedWarehouses.of(rows.getOrDefault(productId, List.of())));
+            }
+        }
+
+        Map<Integer, List<WarehouseStock>> result = new HashMap<>();
+        for (Integer productId : productIds) {
+            result.put(productId, products.get(productId).toRows(productId));
+        }
+        return result;
+    }
+
+    // sign -1 for a reservation, +1 for a release; products not loaded yet are read fresh on first use
+    public void apply(Integer productId, List<ReleaseRequest.Alloc> allocations, int sign) {
+        products.computeIfPresent(productId, (id, current) -> current.with(allocations, sign));
+    }
+
+    public void evict(Integer productId) {
+        products.remove(productId);
+    }
+
+    // immutable, replaced as a whole on every change so readers never see half an update
+    private static final class StockedWarehouses {
+        private final int[] warehouseIds;
+        private final int[] quantities;
+
+        private StockedWarehouses(int[] warehouseIds, int[] quantities) {
+            this.warehouseIds = warehouseIds;
+            this.quantities = quantities;
+        }
+
+        private static StockedWarehouses of(List<int[]> rows) {
+            TreeMap<Integer, Integer> stocked = new TreeMap<>();
+            for (int[] row : rows) {
+                if (row[1] > 0) stocked.put(row[0], row[1]);
+            }
+            return of(stocked);
+        }
+
+        private static StockedWarehouses of(SortedMap<Integer, Integer> stocked) {
+            int[] ids = new int[stocked.size()];
+            int[] qty = new int[stocked.size()];
+            int i = 0;
+            for (var entry : stocked.entrySet()) {
+                ids[i] = entry.getKey();
+                qty[i++] = entry.getValue();
+            }
+            return new StockedWarehouses(ids, qty);
+        }
+
+        private StockedWarehouses with(List<ReleaseRequest.Alloc> allocations, int sign) {
+            TreeMap<Integer, Integer> stocked = new TreeMap<>();
+            for (int i = 0; i < warehouseIds.length; i++) {
+                stocked.put(warehouseIds[i], quantities[i]);
+            }
+            for (var alloc : allocations) {
+                int quantity = stocked.getOrDefault(alloc.getWarehouseId(), 0) + sign * alloc.getQty();
+                if (quantity > 0) {
+                    stocked.put(alloc.getWarehouseId(), quantity);
+                } else {
+                    stocked.remove(alloc.getWarehouseId());
+                }
+            }
+            return of(stocked);
+        }
+
+        private List<WarehouseStock> toRows(Integer productId) {
+            List<WarehouseStock> rows = new ArrayList<>(warehouseIds.length);
+            for (int i = 0; i < warehouseIds.length; i++) {
+                WarehouseStock ws = new WarehouseStock();
+                ws.setWarehouseId(warehouseIds[i]);
+                ws.setProductId(productId);
+                ws.setQuantity(quantities[i]);
+                rows.add(ws);
+            }
+            return rows;
+        }
+    }
+}
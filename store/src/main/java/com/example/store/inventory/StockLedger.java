@@ -0,0 +1,236 @@
+package com.example.store.inventory;
+
+import com.example.store.dto.request.ReleaseRequest;
+import com.example.store.entity.WarehouseStock;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Optional in-memory copy of store.warehouse_stock for hot products.
+ * Quantities are plain int counters updated with CAS; every change is also recorded as a pending delta
+ * that a write-behind thread flushes to warehouse_stock in batches.
+ * Only valid while a single store instance owns the stock.
+ */
+@Component
+@Slf4j
+public class StockLedger {
+
+    private static final String LOAD_SQL = """
+            SELECT warehouse_id, product_id, quantity
+            FROM store.warehouse_stock
+            ORDER BY product_id, warehouse_id
+            """;
+
+    // deltas keep the flush correct even if the row was changed outside the ledger
+    private static final String FLUSH_SQL = """
+            UPDATE store.warehouse_stock
+            SET quantity = quantity + ?
+            WHERE warehouse_id = ? AND product_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final Stripe[] stripes;
+    private volatile boolean ready;
+    private ScheduledExecutorService flusher;
+
+    public StockLedger(JdbcTemplate jdbcTemplate,
+                       @Value("${store.inventory.ledger.enabled:false}") boolean enabled,
+                       @Value("${store.inventory.ledger.flush-interval-ms:200}") long flushIntervalMs,
+                       @Value("${store.inventory.ledger.stripes:16}") int stripeCount) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.flushIntervalMs = flushIntervalMs;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // runs after SampleDataLoader has reset the seed stock
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        Map<Integer, List<int[]>> rowsByProduct = new LinkedHashMap<>();
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            rowsByProduct.computeIfAbsent(rs.getInt("product_id"), id -> new ArrayList<>())
+                    .add(new int[]{rs.getInt("warehouse_id"), rs.getInt("quantity")});
+        });
+        rowsByProduct.forEach((productId, rows) -> stripeFor(productId).products.put(productId, new ProductStock(rows)));
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        ready = true;
+        log.info("STOCK LEDGER loaded {} products, flushing every {} ms", rowsByProduct.size(), flushIntervalMs);
+    }
+
+    public boolean tracks(Integer productId) {
+        return ready && productId != null && stripeFor(productId).products.containsKey(productId);
+    }
+
+    // current quantities ordered by quantity desc, the shape InventoryServiceImpl plans from
+    public List<WarehouseStock> snapshot(Integer productId) {
+        ProductStock stock = stripeFor(productId).products.get(productId);
+        List<WarehouseStock> rows = new ArrayList<>(stock.warehouseIds.length);
+        for (int i = 0; i < stock.warehouseIds.length; i++) {
+            WarehouseStock ws = new WarehouseStock();
+            ws.setWarehouseId(stock.warehouseIds[i]);
+            ws.setProductId(productId);
+            ws.setQuantity(stock.quantities.get(i));
+            rows.add(ws);
+        }
+        rows.sort(Comparator.comparing(WarehouseStock::getQuantity).reversed());
+        return rows;
+    }
+
+    /**
+     * Applies all allocations or none of them.
+     * Returns false when a warehouse no longer has the planned quantity, so the caller can re-plan.
+     */
+    public boolean tryReserve(Integer productId, List<ReleaseRequest.Alloc> allocations) {
+        Stripe stripe = stripeFor(productId);
+        ProductStock stock = stripe.products.get(productId);
+        List<ReleaseRequest.Alloc> taken = new ArrayList<>(allocations.size());
+        for (ReleaseRequest.Alloc alloc : allocations) {
+            int slot = stock.slotOf(alloc.getWarehouseId());
+            if (slot < 0 || !stock.tryTake(slot, alloc.getQty())) {
+                for (ReleaseRequest.Alloc undo : taken) {
+                    stock.put(stock.slotOf(undo.getWarehouseId()), undo.getQty());
+                }
+                return false;
+            }
+            taken.add(alloc);
+        }
+        stripe.dirty.add(productId);
+        return true;
+    }
+
+    public void release(Integer productId, List<ReleaseRequest.Alloc> allocations) {
+        Stripe stripe = stripeFor(productId);
+        ProductStock stock = stripe.products.get(productId);
+        for (ReleaseRequest.Alloc alloc : allocations) {
+            int slot = stock.slotOf(alloc.getWarehouseId());
+            if (slot < 0) {
+                throw new IllegalStateException("Unknown warehouse stock row for product=" + productId);
+            }
+            stock.put(slot, alloc.getQty());
+        }
+        stripe.dirty.add(productId);
+    }
+
+    void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        List<Runnable> restore = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            for (Iterator<Integer> it = stripe.dirty.iterator(); it.hasNext(); ) {
+                Integer productId = it.next();
+                it.remove();
+                ProductStock stock = stripe.products.get(productId);
+                for (int i = 0; i < stock.warehouseIds.length; i++) {
+                    int delta = stock.pendingDeltas.getAndSet(i, 0);
+                    if (delta != 0) {
+                        int slot = i;
+                        batch.add(new Object[]{delta, stock.warehouseIds[i], productId});
+                        restore.add(() -> {
+                            stock.pendingDeltas.addAndGet(slot, delta);
+                            stripe.dirty.add(productId);
+                        });
+                    }
+                }
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+            log.debug("STOCK LEDGER flushed {} rows", batch.size());
+        } catch (Exception e) {
+            // keep the deltas so the next tick writes them again
+            restore.forEach(Runnable::run);
+            log.error("STOCK LEDGER flush of {} rows failed", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        ready = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private Stripe stripeFor(Integer productId) {
+        return stripes[productId.hashCode() & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        private final Map<Integer, ProductStock> products = new ConcurrentHashMap<>();
+        private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    }
+
+    // one slot per warehouse stocking the product; the warehouse set is fixed at load time
+    private static final class ProductStock {
+        private final int[] warehouseIds;
+        private final AtomicIntegerArray quantities;
+        private final AtomicIntegerArray pendingDeltas;
+
+        private ProductStock(List<int[]> rows) {
+            warehouseIds = new int[rows.size()];
+            quantities = new AtomicIntegerArray(rows.size());
+            pendingDeltas = new AtomicIntegerArray(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                warehouseIds[i] = rows.get(i)[0];
+                quantities.set(i, rows.get(i)[1]);
+            }
+        }
+
+        private int slotOf(Integer warehouseId) {
+            return warehouseId == null ? -1 : Arrays.binarySearch(warehouseIds, warehouseId);
+        }
+
+        private boolean tryTake(int slot, int qty) {
+            for (;;) {
+                int current = quantities.get(slot);
+                if (current < qty) {
+                    return false;
+                }
+                if (quantities.compareAndSet(slot, current, current - qty)) {
+                    pendingDeltas.addAndGet(slot, -qty);
+                    return true;
+                }
+            }
+        }
+
+        private void put(int slot, int qty) {
+            quantities.addAndGet(slot, qty);
+            pendingDeltas.addAndGet(slot, qty);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.store.inventory.allocation;
+
+import com.example.store.dto.response.AvailabilityResponse;
+import com.example.store.entity.WarehouseStock;
+
+import java.util.List;
+
+/**
+ * Decides which warehouses an order line is taken from.
+ * Selected with store.inventory.allocation.strategy, see {@link com.example.store.config.AllocationConfig}.
+ */
+public interface AllocationStrategy {
+
+    String name();
+
+    /**
+     * candidates are the warehouses holding stock of one product, in no particular order.
+     * Returns allocations adding up to quantity, or as much as could be found when the stock is short.
+     */
+    List<AvailabilityResponse.WarehouseAllocation> allocate(List<WarehouseStock> candidates, int quantity);
+}
@@ -0,0 +1,50 @@
+package com.example.store.inventory.allocation;
+
+import com.example.store.dto.response.AvailabilityResponse;
+import com.example.store.entity.WarehouseStock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ships from as few warehouses as possible.
+ * A single warehouse is used whenever one can cover the line, picking the tightest fit so large stocks stay whole;
+ * otherwise the fullest warehouses are taken, which needs the fewest of them, and the last one is again the tightest fit.
+ */
+public class FewestSplitsStrategy implements AllocationStrategy {
+
+    public static final String NAME = "fewest-splits";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<AvailabilityResponse.WarehouseAllocation> allocate(List<WarehouseStock> candidates, int quantity) {
+        List<WarehouseStock> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparing(WarehouseStock::getQuantity).reversed()
+                .thenComparing(WarehouseStock::getWarehouseId));
+
+        List<AvailabilityResponse.WarehouseAllocation> plan = new ArrayList<>();
+        int needed = quantity;
+        int next = 0;
+        while (needed > 0 && next < ordered.size()) {
+            // smallest remaining warehouse that finishes the line on its own
+            int fit = -1;
+            for (int i = next; i < ordered.size() && ordered.get(i).getQuantity() >= needed; i++) {
+                fit = i;
+            }
+            if (fit >= 0) {
+                plan.add(new AvailabilityResponse.WarehouseAllocation(ordered.get(fit).getWarehouseId(), needed));
+                return plan;
+            }
+            int take = Math.max(0, ordered.get(next).getQuantity());
+            if (take > 0) plan.add(new AvailabilityResponse.WarehouseAllocation(ordered.get(next).getWarehouseId(), take));
+            needed -= take;
+            next++;
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.store.inventory.allocation;
+
+import com.example.store.dto.response.AvailabilityResponse;
+import com.example.store.entity.WarehouseStock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// drain the fullest warehouses first
+public class GreedyLargestStrategy implements AllocationStrategy {
+
+    public static final String NAME = "greedy-largest";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<AvailabilityResponse.WarehouseAllocation> allocate(List<WarehouseStock> candidates, int quantity) {
+        List<WarehouseStock> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparing(WarehouseStock::getQuantity).reversed()
+                .thenComparing(WarehouseStock::getWarehouseId));
+        return takeInOrder(ordered, quantity);
+    }
+
+    static List<AvailabilityResponse.WarehouseAllocation> takeInOrder(List<WarehouseStock> ordered, int quantity) {
+        int needed = quantity;
+        List<AvailabilityResponse.WarehouseAllocation> plan = new ArrayList<>();
+        for (var ws : ordered) {
+            if (needed == 0) break;
+            int take = Math.min(Math.max(0, ws.getQuantity()), needed);
+            if (take > 0) plan.add(new AvailabilityResponse.WarehouseAllocation(ws.getWarehouseId(), take));
+            needed -= take;
+        }
+        return plan;
+    }
+}
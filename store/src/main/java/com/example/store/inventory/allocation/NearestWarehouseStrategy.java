@@ -0,0 +1,39 @@
+package com.example.store.inventory.allocation;
+
+import com.example.store.dto.response.AvailabilityResponse;
+import com.example.store.entity.WarehouseStock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes stock from the closest warehouses first.
+ * Customers have no address yet, so distance is a configured figure per warehouse
+ * (store.inventory.allocation.warehouse-distances); unknown warehouses count as furthest away.
+ */
+public class NearestWarehouseStrategy implements AllocationStrategy {
+
+    public static final String NAME = "nearest-warehouse";
+
+    private final Map<Integer, Integer> distances;
+
+    public NearestWarehouseStrategy(Map<Integer, Integer> distances) {
+        this.distances = Map.copyOf(distances);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<AvailabilityResponse.WarehouseAllocation> allocate(List<WarehouseStock> candidates, int quantity) {
+        List<WarehouseStock> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.<WarehouseStock>comparingInt(ws -> distances.getOrDefault(ws.getWarehouseId(), Integer.MAX_VALUE))
+                .thenComparing(Comparator.comparing(WarehouseStock::getQuantity).reversed())
+                .thenComparing(WarehouseStock::getWarehouseId));
+        return GreedyLargestStrategy.takeInOrder(ordered, quantity);
+    }
+}
@@ -1,53 +1,182 @@
 package com.example.store.messaging;
 
+import com.example.store.bank.RefundRetryQueue;
 import com.example.store.config.RabbitMQConfig;
 import com.example.store.dto.response.BankRefundResponse;
 import com.example.store.dto.response.DeliveryUpdate;
 import com.example.store.entity.DeliveryStatus;
+import com.example.store.exception.BankUnavailableException;
 import com.example.store.exception.OrderException;
 import com.example.store.service.BankService;
 import com.example.store.service.DeliveryService;
 import com.example.store.service.EmailService;
 import com.example.store.service.impl.DeliveryServiceImpl;
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Component
 @Slf4j
 public class DeliveryConsumer {
     private final DeliveryService deliveryService;
     private final EmailService emailService;
     private final BankService bankService;
+    private final RefundRetryQueue refundRetryQueue;
+    private final ExecutorService[] lanes;
 
-    public DeliveryConsumer(DeliveryService deliveryService,  EmailService emailService, BankService bankService) {
+    public DeliveryConsumer(DeliveryService deliveryService,  EmailService emailService, BankService bankService,
+                            RefundRetryQueue refundRetryQueue,
+                            @Value("${store.delivery.updates.lanes:0}") int lanes) {
         this.deliveryService = deliveryService;
         this.emailService = emailService;
         this.bankService = bankService;
+        this.refundRetryQueue = refundRetryQueue;
+        // started here, the listener container may hand over a batch before the application is ready
+        this.lanes = new ExecutorService[lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < this.lanes.length; i++) {
+            String name = "delivery-update-lane-" + i;
+            this.lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 
-    @RabbitListener(queues = RabbitMQConfig.DELIVERY_UPDATE_QUEUE)
-    public void handleDeliveryUpdate(
-        DeliveryUpdate deliveryUpdate
+    // a batch is collapsed to the latest update of each order and split into lanes by order id; every lane
+    // applies its orders with one UPDATE on its own thread. The next batch is only taken once all lanes are
+    // done, so updates of one order are applied strictly in queue order, whichever lane it hashes to.
+    // Superseded updates are acked with their batch; a failed order dead-letters only its latest update
+    @RabbitListener(queues = RabbitMQConfig.DELIVERY_UPDATE_QUEUE, containerFactory = RabbitMQConfig.DELIVERY_UPDATE_BATCH_FACTORY)
+    public void handleDeliveryUpdates(List<Message<DeliveryUpdate>> messages, Channel channel) throws IOException {
+        Map<Integer, DeliveryUpdate> latest = new LinkedHashMap<>();
+        Map<Integer, Long> latestTags = new HashMap<>();
+        long lastTag = 0;
+        for (Message<DeliveryUpdate> message : messages) {
+            DeliveryUpdate deliveryUpdate = message.getPayload();
+            long tag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+            lastTag = Math.max(lastTag, tag);
+            // messages come in queue order, a later update replaces an earlier one unless it went back in rank
+            DeliveryUpdate kept = latest.get(deliveryUpdate.getOrderId());
+            if (kept != null && deliveryUpdate.getStatus().rank() < kept.getStatus().rank()) {
+                continue;
+            }
+            latest.put(deliveryUpdate.getOrderId(), deliveryUpdate);
+            latestTags.put(deliveryUpdate.getOrderId(), tag);
+        }
+
+        List<List<DeliveryUpdate>> perLane = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            perLane.add(new ArrayList<>());
+        }
+        latest.values().forEach(update -> perLane.get(Math.floorMod(update.getOrderId(), lanes.length)).add(update));
+        log.info("DELIVERY UPDATES: {} messages for {} orders", messages.size(), latest.size());
+
+        List<CompletableFuture<Set<Integer>>> running = new ArrayList<>();
+        for (int i = 0; i < lanes.length; i++) {
+            List<DeliveryUpdate> updates = perLane.get(i);
+            if (!updates.isEmpty()) {
+                running.add(CompletableFuture.supplyAsync(() -> applyLane(updates), lanes[i]));
+            }
+        }
+        Set<Long> failedTags = new HashSet<>();
+        for (CompletableFuture<Set<Integer>> lane : running) {
+            // the channel is not thread safe, acks stay on the listener thread
+            lane.join().forEach(orderId -> failedTags.add(latestTags.get(orderId)));
+        }
 
-    ) {
+        if (failedTags.isEmpty()) {
+            channel.basicAck(lastTag, true);
+            return;
+        }
+        for (Message<DeliveryUpdate> message : messages) {
+            long tag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+            if (failedTags.contains(tag)) {
+                // dead-lettered to delivery_update_dlq like a failed single update
+                channel.basicNack(tag, false, false);
+            } else {
+                channel.basicAck(tag, false);
+            }
+        }
+    }
+
+    // the orders of one lane; returns those whose update failed
+    private Set<Integer> applyLane(List<DeliveryUpdate> updates) {
+        Map<Integer, Boolean> applied;
         try {
+            applied = deliveryService.handleUpdates(updates);
+        } catch (RuntimeException e) {
+            log.error("Batched status update of {} orders failed, applying them one by one", updates.size(), e);
+            applied = new HashMap<>();
+            for (DeliveryUpdate deliveryUpdate : updates) {
+                try {
+                    applied.putAll(deliveryService.handleUpdates(List.of(deliveryUpdate)));
+                } catch (RuntimeException single) {
+                    log.error("Failed to update order {}", deliveryUpdate.getOrderId(), single);
+                }
+            }
+        }
 
-            deliveryService.handleUpdate(deliveryUpdate);
+        Set<Integer> failed = new HashSet<>();
+        for (DeliveryUpdate deliveryUpdate : updates) {
+            Boolean changed = applied.get(deliveryUpdate.getOrderId());
+            if (changed == null) {
+                log.error("Order {} of delivery update not found", deliveryUpdate.getOrderId());
+                failed.add(deliveryUpdate.getOrderId());
+                continue;
+            }
+            if (!changed) {
+                // an older status than the order already has, nothing to tell the customer
+                continue;
+            }
+            try {
+                afterStatusChange(deliveryUpdate);
+            } catch (RuntimeException e) {
+                log.error("Failed to send delivery update for order {}", deliveryUpdate.getOrderId(), e);
+                failed.add(deliveryUpdate.getOrderId());
+            }
+        }
+        return failed;
+    }
 
-            if (deliveryUpdate.getStatus() == DeliveryStatus.LOST) {
-                log.info("DELIVERY IS LOST, REFUNDING FOR ORDER ID {}",  deliveryUpdate.getOrderId());
+    private void afterStatusChange(DeliveryUpdate deliveryUpdate) {
+        if (deliveryUpdate.getStatus() == DeliveryStatus.LOST) {
+            log.info("DELIVERY IS LOST, REFUNDING FOR ORDER ID {}",  deliveryUpdate.getOrderId());
+            try {
                 BankRefundResponse refundResponse =  bankService.refund(deliveryUpdate.getOrderId());
                 if (refundResponse == null || !"SUCCESS".equals(refundResponse.getStatus())) {
                     throw new OrderException("Bank refund failed for order: " + deliveryUpdate.getOrderId());
                 }
+            } catch (BankUnavailableException e) {
+                // redelivering the update would only hit the open circuit again
+                refundRetryQueue.enqueue(deliveryUpdate.getOrderId(), "Delivery lost");
             }
+        }
 
-            emailService.sendStatusEmail(deliveryUpdate.getOrderId(), deliveryUpdate.getStatus());
+        emailService.sendStatusEmail(deliveryUpdate.getOrderId(), deliveryUpdate.getStatus());
+    }
 
-        } catch (RuntimeException e) {
-            log.error("Failed to send delivery update for order {}", deliveryUpdate.getOrderId());
-            throw new RuntimeException(e);
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
         }
     }
 
@@ -1,7 +1,9 @@
 package com.example.store.messaging;
 
+import com.example.store.bank.RefundRetryQueue;
 import com.example.store.config.RabbitMQConfig;
 import com.example.store.dto.response.DeliveryUpdate;
+import com.example.store.exception.BankUnavailableException;
 import com.example.store.service.BankService;
 import com.example.store.service.EmailService;
 import com.example.store.service.OrderService;
@@ -17,11 +19,14 @@ public class DeliveryUpdateDlqConsumer {
     private final EmailService emailService;
     private final BankService bankService;
     private final OrderService orderService;
+    private final RefundRetryQueue refundRetryQueue;
 
-    public DeliveryUpdateDlqConsumer(EmailService emailService, BankService bankService, OrderService orderService) {
+    public DeliveryUpdateDlqConsumer(EmailService emailService, BankService bankService, OrderService orderService,
+                                     RefundRetryQueue refundRetryQueue) {
         this.emailService = emailService;
         this.bankService = bankService;
         this.orderService = orderService;
+        this.refundRetryQueue = refundRetryQueue;
     }
 
     @RabbitListener(queues = RabbitMQConfig.DELIVERY_UPDATE_DLQ)
@@ -39,7 +44,11 @@ public class DeliveryUpdateDlqConsumer {
             orderService.cancelOrder(deliveryUpdate.getOrderId());
 
             log.error("DELIVERY UPDATE FAILED: REFUNDING FOR USER FOR ORDER ID : " + deliveryUpdate.getOrderId());
-            bankService.refund(deliveryUpdate.getOrderId());
+            try {
+                bankService.refund(deliveryUpdate.getOrderId());
+            } catch (BankUnavailableException e) {
+                refundRetryQueue.enqueue(deliveryUpdate.getOrderId(), "Delivery update failed");
+            }
 
         } catch (Exception e) {
             log.error("Failed to handle DLQ message", e);
@@ -0,0 +1,67 @@
+package com.example.store.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+
+/**
+ * Every message the store publishes goes through here instead of RabbitTemplate.
+ * The message is a row in store.outbox_message written in the caller's transaction, so it exists
+ * exactly when the changes it announces were committed; OutboxRelay publishes it afterwards.
+ */
+@Component
+@Slf4j
+public class MessageOutbox {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO store.outbox_message
+                (exchange, routing_key, payload_type, payload, order_id, status, attempts, available_at, created_at)
+            VALUES (?, ?, ?, ?, ?, 'PENDING', 0, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final OutboxRelay relay;
+
+    public MessageOutbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, @Lazy OutboxRelay relay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.relay = relay;
+    }
+
+    public void add(String exchange, String routingKey, Object payload, Integer orderId) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Message for order " + orderId + " cannot be serialized", e);
+        }
+        addJson(exchange, routingKey, payload.getClass().getName(), json, orderId);
+    }
+
+    // for payloads that were serialized earlier, payloadType is the class the consumer sees in __TypeId__
+    public void addJson(String exchange, String routingKey, String payloadType, String json, Integer orderId) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update(INSERT_SQL, exchange, routingKey, payloadType, json, orderId, now, now);
+        log.debug("OUTBOX {} {} for order {}", exchange, routingKey, orderId);
+
+        // the relay polls anyway, this only saves the wait
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    relay.wakeUp();
+                }
+            });
+        } else {
+            relay.wakeUp();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.store.outbox;
+
+import com.example.store.config.RabbitMQConfig;
+import com.example.store.messaging.CustomCorrelationData;
+import com.example.store.service.EmailService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes store.outbox_message rows in id order, batch-size at a time.
+ * A batch is claimed with FOR UPDATE SKIP LOCKED, so several store instances can relay together;
+ * all messages of the batch are sent first and their publisher confirms collected afterwards, then the
+ * confirmed rows are marked SENT with one UPDATE. Rows that were nacked, returned or not confirmed in
+ * time are retried with backoff, a crash before the mark only means they are published again.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private static final String CLAIM_SQL = """
+            SELECT id, exchange, routing_key, payload_type, payload, order_id, attempts
+            FROM store.outbox_message
+            WHERE status = 'PENDING' AND available_at <= ?
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED
+            """;
+
+    private static final String SENT_SQL = """
+            UPDATE store.outbox_message SET status = 'SENT', sent_at = ?, last_error = NULL WHERE id = ANY(?)
+            """;
+
+    private static final String RETRY_SQL = """
+            UPDATE store.outbox_message SET status = ?, attempts = ?, available_at = ?, last_error = ? WHERE id = ?
+            """;
+
+    private static final String PURGE_SQL = """
+            DELETE FROM store.outbox_message WHERE status = 'SENT' AND sent_at < ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final EmailService emailService;
+    private final long intervalMs;
+    private final int batchSize;
+    private final long confirmTimeoutMs;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final int maxAttempts;
+    private final long retentionMs;
+    private final Counter published;
+    private final Counter failed;
+    private final AtomicBoolean wakeUpQueued = new AtomicBoolean();
+    private ScheduledExecutorService worker;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       RabbitTemplate rabbitTemplate,
+                       @Lazy EmailService emailService,
+                       MeterRegistry meterRegistry,
+                       @Value("${store.outbox.interval-ms:1000}") long intervalMs,
+                       @Value("${store.outbox.batch-size:100}") int batchSize,
+                       @Value("${store.outbox.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                       @Value("${store.outbox.base-backoff-ms:1000}") long baseBackoffMs,
+                       @Value("${store.outbox.max-backoff-ms:60000}") long maxBackoffMs,
+                       @Value("${store.outbox.max-attempts:50}") int maxAttempts,
+                       @Value("${store.outbox.retention-ms:86400000}") long retentionMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.emailService = emailService;
+        this.intervalMs = intervalMs;
+        this.batchSize = batchSize;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.maxAttempts = maxAttempts;
+        this.retentionMs = retentionMs;
+        this.published = Counter.builder("store.outbox.published").register(meterRegistry);
+        this.failed = Counter.builder("store.outbox.failed").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::drain, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        worker.scheduleWithFixedDelay(this::purgeSent, retentionMs, retentionMs, TimeUnit.MILLISECONDS);
+    }
+
+    // runs a pass right away instead of at the next interval; calls made while one is queued are folded into it
+    public void wakeUp() {
+        if (worker != null && wakeUpQueued.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                wakeUpQueued.set(false);
+                drain();
+            });
+        }
+    }
+
+    private void drain() {
+        try {
+            int relayed;
+            do {
+                relayed = transactionTemplate.execute(status -> relayBatch());
+            } while (relayed == batchSize);
+        } catch (RuntimeException e) {
+            log.warn("Outbox relay pass failed, will retry", e);
+        }
+    }
+
+    private int relayBatch() {
+        long now = System.currentTimeMillis();
+        List<OutboxRow> rows = jdbcTemplate.query(CLAIM_SQL,
+                (rs, rowNum) -> new OutboxRow(rs.getLong("id"), rs.getString("exchange"), rs.getString("routing_key"),
+                        rs.getString("payload_type"), rs.getString("payload"), (Integer) rs.getObject("order_id"),
+                        rs.getInt("attempts")),
+                new Timestamp(now), batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<CorrelationData> confirms = new ArrayList<>(rows.size());
+        for (OutboxRow row : rows) {
+            CustomCorrelationData correlationData = CustomCorrelationData.builder()
+                    .id("outbox-" + row.id)
+                    .queueType(row.routingKey)
+                    .orderId(row.orderId)
+                    .build();
+            try {
+                rabbitTemplate.send(row.exchange, row.routingKey, toMessage(row), correlationData);
+                confirms.add(correlationData);
+            } catch (RuntimeException e) {
+                confirms.add(null);
+                log.warn("OUTBOX publish of {} failed: {}", row.id, e.getMessage());
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + confirmTimeoutMs;
+        List<Long> sent = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            OutboxRow row = rows.get(i);
+            String error = awaitConfirm(confirms.get(i), deadline);
+            if (error == null) {
+                sent.add(row.id);
+            } else {
+                retryLater(row, error);
+            }
+        }
+
+        if (!sent.isEmpty()) {
+            jdbcTemplate.update(SENT_SQL, ps -> {
+                ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                ps.setArray(2, ps.getConnection().createArrayOf("bigint", sent.toArray()));
+            });
+            published.increment(sent.size());
+        }
+        return rows.size();
+    }
+
+    // null when the broker took the message
+    private String awaitConfirm(CorrelationData correlationData, long deadline) {
+        if (correlationData == null) {
+            return "Not published";
+        }
+        try {
+            CorrelationData.Confirm confirm = correlationData.getFuture()
+                    .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) {
+                return "Nacked: " + confirm.getReason();
+            }
+            if (correlationData.getReturned() != null) {
+                return "Unroutable: " + correlationData.getReturned().getReplyText();
+            }
+            return null;
+        } catch (TimeoutException e) {
+            return "No publisher confirm within " + confirmTimeoutMs + " ms";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted";
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    private void retryLater(OutboxRow row, String error) {
+        int attempts = row.attempts + 1;
+        long backoff = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempts - 1, 20));
+        String status = attempts >= maxAttempts ? "FAILED" : "PENDING";
+        jdbcTemplate.update(RETRY_SQL, status, attempts, new Timestamp(System.currentTimeMillis() + backoff),
+                error.length() <= 500 ? error : error.substring(0, 500), row.id);
+        if ("PENDING".equals(status)) {
+            log.warn("OUTBOX message {} ({}) not delivered, attempt {}: {}", row.id, row.routingKey, attempts, error);
+            return;
+        }
+        failed.increment();
+        log.error("OUTBOX gave up on message {} ({}) for order {}: {}", row.id, row.routingKey, row.orderId, error);
+        if (RabbitMQConfig.DELIVERY_REQUEST_KEY.equals(row.routingKey) && row.orderId != null) {
+            emailService.sendAlertFailedDeliveryEmail(row.orderId);
+        }
+    }
+
+    // the same message Jackson2JsonMessageConverter would have built, consumers see no difference
+    private Message toMessage(OutboxRow row) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setMessageId("outbox-" + row.id);
+        properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, row.payloadType);
+        return new Message(row.payload.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private void purgeSent() {
+        try {
+            int purged = jdbcTemplate.update(PURGE_SQL, new Timestamp(System.currentTimeMillis() - retentionMs));
+            if (purged > 0) {
+                log.info("Purged {} sent outbox messages", purged);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Outbox purge failed, will retry", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    private record OutboxRow(long id, String exchange, String routingKey, String payloadType, String payload,
+                             Integer orderId, int attempts) {
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.store.push;
+
+import com.example.store.dto.response.OrderStatusUpdate;
+import com.example.store.event.OrderStatusChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process registry of open order status streams, a few SSE connections per user.
+ * Connections are async servlet requests, so an idle subscriber holds a socket but no request thread.
+ * Every connection has its own bounded queue of pending events, drained in order by one of writer-threads
+ * writer threads at a time; publishing only enqueues, so neither DeliveryConsumer nor other users wait on a
+ * slow client. A connection whose queue fills up has fallen behind and is closed, the browser reconnects.
+ * A write to a stalled socket holds its writer only until the servlet container's write timeout.
+ */
+@Component
+@Slf4j
+public class OrderStatusStreams {
+
+    private static final String STATUS_EVENT = "order-status";
+
+    private final Map<Integer, List<Connection>> subscribers = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+    private final long heartbeatMs;
+    private final int maxPerUser;
+    private final int queueCapacity;
+    // holds at most one drain task per connection, so it is bounded by the open connections
+    private final ExecutorService writers;
+    private final Counter fallenBehind;
+    private ScheduledExecutorService heartbeat;
+
+    public OrderStatusStreams(MeterRegistry meterRegistry,
+                              @Value("${store.orders.events.timeout-ms:1800000}") long timeoutMs,
+                              @Value("${store.orders.events.heartbeat-ms:15000}") long heartbeatMs,
+                              @Value("${store.orders.events.max-per-user:5}") int maxPerUser,
+                              @Value("${store.orders.events.queue-capacity:32}") int queueCapacity,
+                              @Value("${store.orders.events.writer-threads:8}") int writerThreads) {
+        this.timeoutMs = timeoutMs;
+        this.heartbeatMs = heartbeatMs;
+        this.maxPerUser = maxPerUser;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "order-status-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("store.orders.events.connections", this, OrderStatusStreams::connectionCount)
+                .description("Open order status streams")
+                .register(meterRegistry);
+        this.fallenBehind = Counter.builder("store.orders.events.dropped")
+                .description("Order status streams closed because they fell behind")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-status-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    // the browser reconnects on its own once the timeout closes the stream
+    public SseEmitter subscribe(Integer userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Connection connection = new Connection(userId, emitter, queueCapacity);
+        List<Connection> evicted = new ArrayList<>();
+        subscribers.compute(userId, (id, connections) -> {
+            List<Connection> current = connections == null ? new CopyOnWriteArrayList<>() : connections;
+            // the oldest streams go first rather than letting one user pile up connections
+            while (current.size() >= maxPerUser && !current.isEmpty()) {
+                evicted.add(current.remove(0));
+            }
+            current.add(connection);
+            return current;
+        });
+        evicted.forEach(old -> old.emitter.complete());
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(e -> remove(connection));
+
+        // flushes the response headers so the client sees the stream open straight away
+        enqueue(connection, SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(OrderStatusChangedEvent event) {
+        List<Connection> connections = event.userId() == null ? null : subscribers.get(event.userId());
+        if (connections == null) {
+            return;
+        }
+        OrderStatusUpdate update = new OrderStatusUpdate(event.orderId(), event.status(), LocalDateTime.now());
+        for (Connection connection : connections) {
+            enqueue(connection, SseEmitter.event().name(STATUS_EVENT).data(update));
+        }
+    }
+
+    public int connectionCount() {
+        return subscribers.values().stream().mapToInt(List::size).sum();
+    }
+
+    // idle connections would otherwise only be noticed as dead on the next status change
+    private void sendHeartbeats() {
+        subscribers.values().forEach(connections -> connections.forEach(connection -> {
+            // a connection with events waiting gets its keep-alive from them
+            if (connection.pending.isEmpty()) {
+                enqueue(connection, SseEmitter.event().comment("keep-alive"));
+            }
+        }));
+    }
+
+    private void enqueue(Connection connection, SseEmitter.SseEventBuilder event) {
+        if (!connection.pending.offer(event)) {
+            log.debug("Order status stream of user {} fell behind, closing it", connection.userId);
+            fallenBehind.increment();
+            close(connection, null);
+            return;
+        }
+        if (connection.draining.compareAndSet(false, true)) {
+            try {
+                writers.execute(() -> drain(connection));
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                connection.draining.set(false);
+            }
+        }
+    }
+
+    // at most one writer per connection, so its events go out in the order they were queued
+    private void drain(Connection connection) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while ((event = connection.pending.poll()) != null) {
+                try {
+                    connection.emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Dropping order status stream for user {}: {}", connection.userId, e.getMessage());
+                    close(connection, e);
+                    return;
+                }
+            }
+            connection.draining.set(false);
+            // an event queued after the last poll but before the flag was cleared
+        } while (!connection.pending.isEmpty() && connection.draining.compareAndSet(false, true));
+    }
+
+    private void close(Connection connection, Throwable error) {
+        remove(connection);
+        connection.pending.clear();
+        if (error == null) {
+            connection.emitter.complete();
+        } else {
+            connection.emitter.completeWithError(error);
+        }
+    }
+
+    private void remove(Connection connection) {
+        subscribers.computeIfPresent(connection.userId, (id, connections) -> {
+            connections.remove(connection);
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        writers.shutdownNow();
+        subscribers.values().forEach(connections -> connections.forEach(connection -> connection.emitter.complete()));
+        subscribers.clear();
+    }
+
+    private static final class Connection {
+        private final Integer userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Connection(Integer userId, SseEmitter emitter, int queueCapacity) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        }
+    }
+}
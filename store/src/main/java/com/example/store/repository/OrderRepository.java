@@ -6,13 +6,21 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order,Integer> {
 
-    @Query("Select o from Order o join fetch o.user where o.id = :id")
+    @Query("Select distinct o from Order o join fetch o.user left join fetch o.lines where o.id = :id")
     Optional<Order> findByIdWithUser(@Param("id") Integer orderId);
     Optional<List<Order>> findByUserId(Integer userId);
+
+    // user and lines in the same query, so mapping a whole list does not go back to the database per order
+    @Query("Select distinct o from Order o join fetch o.user u left join fetch o.lines where u.id = :userId")
+    List<Order> findAllByUserIdWithDetails(@Param("userId") Integer userId);
+
+    @Query("Select distinct o from Order o left join fetch o.lines where o.id in :ids")
+    List<Order> findAllWithLines(@Param("ids") Collection<Integer> orderIds);
 }
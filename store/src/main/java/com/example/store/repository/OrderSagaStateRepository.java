@@ -1,9 +1,34 @@
 package com.example.store.repository;
 
 import com.example.store.entity.OrderSagaState;
+import com.example.store.entity.SagaStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface OrderSagaStateRepository extends JpaRepository<OrderSagaState, Long> {
+
+    // served by idx_saga_status_updated_at, keyset paged on id
+    @Query("""
+            select s.id from OrderSagaState s
+            where s.status in :statuses and s.updatedAt < :cutoff and s.id > :afterId
+            order by s.id
+            """)
+    List<Long> findStaleIds(@Param("statuses") Collection<SagaStatus> statuses,
+                            @Param("cutoff") LocalDateTime cutoff,
+                            @Param("afterId") Long afterId,
+                            Pageable pageable);
+
+    // touching updated_at moves the saga out of the stale window, so only one worker wins it
+    @Modifying
+    @Query("update OrderSagaState s set s.updatedAt = :now where s.id = :id and s.updatedAt < :cutoff")
+    int claim(@Param("id") Long id, @Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now);
 }
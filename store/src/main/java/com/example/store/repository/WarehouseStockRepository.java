@@ -19,14 +19,22 @@ public interface WarehouseStockRepository extends JpaRepository<WarehouseStock,
     """)
     List<WarehouseStock> findAllForProduct(@Param("pid") Integer productId);
     
-    // Lock all rows for this product to serialize reservations and avoid oversell
+    @Query("""
+        select ws from WarehouseStock ws
+        where ws.productId in :pids
+        order by ws.productId, ws.quantity desc
+    """)
+    List<WarehouseStock> findAllForProducts(@Param("pids") Collection<Integer> productIds);
+
+    // Lock all rows for these products to serialize reservations and avoid oversell.
+    // Rows are locked in (product, warehouse) order so two concurrent reservations can never deadlock.
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("""
         select ws from WarehouseStock ws
-        where ws.productId = :pid
-        order by ws.quantity desc
+        where ws.productId in :pids
+        order by ws.productId, ws.warehouseId
     """)
-    List<WarehouseStock> findAllForProductForUpdate(@Param("pid") Integer productId);
+    List<WarehouseStock> findAllForProductsForUpdate(@Param("pids") Collection<Integer> productIds);
 
     Optional<WarehouseStock> findByWarehouseIdAndProductId(Integer warehouseId, Integer productId);
 }
\ No newline at end of file
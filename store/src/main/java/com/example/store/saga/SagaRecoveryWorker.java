@@ -0,0 +1,132 @@
+package com.example.store.saga;
+
+import com.example.store.entity.SagaStatus;
+import com.example.store.service.OrderOrchestrator;
+import com.example.store.service.OrderSagaStateService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks up sagas that stopped moving, e.g. because the store crashed between two steps.
+ * Runs once when the application is ready and then every interval; each scan pages through
+ * non-terminal sagas older than the stale threshold and hands them to the orchestrator
+ * with at most {@code parallelism} recoveries running at a time.
+ */
+@Component
+@Slf4j
+public class SagaRecoveryWorker {
+
+    private static final Set<SagaStatus> NON_TERMINAL = EnumSet.complementOf(
+            EnumSet.of(SagaStatus.COMPLETED, SagaStatus.COMPENSATED, SagaStatus.FAILED));
+
+    private final OrderSagaStateService orderSagaStateService;
+    private final OrderOrchestrator orderOrchestrator;
+    private final boolean enabled;
+    private final long staleAfterMs;
+    private final long intervalMs;
+    private final int pageSize;
+    private final int parallelism;
+    private ScheduledExecutorService scanner;
+    private ExecutorService workers;
+
+    public SagaRecoveryWorker(OrderSagaStateService orderSagaStateService,
+                              OrderOrchestrator orderOrchestrator,
+                              @Value("${store.saga.recovery.enabled:true}") boolean enabled,
+                              @Value("${store.saga.recovery.stale-after-ms:300000}") long staleAfterMs,
+                              @Value("${store.saga.recovery.interval-ms:60000}") long intervalMs,
+                              @Value("${store.saga.recovery.page-size:100}") int pageSize,
+                              @Value("${store.saga.recovery.parallelism:4}") int parallelism) {
+        this.orderSagaStateService = orderSagaStateService;
+        this.orderOrchestrator = orderOrchestrator;
+        this.enabled = enabled;
+        this.staleAfterMs = staleAfterMs;
+        this.intervalMs = intervalMs;
+        this.pageSize = pageSize;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "saga-recovery-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scanner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "saga-recovery-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scanner.scheduleWithFixedDelay(this::scan, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("SAGA RECOVERY scanning every {} ms for sagas idle longer than {} ms", intervalMs, staleAfterMs);
+    }
+
+    public void scan() {
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000);
+            Long afterId = 0L;
+            int recovered = 0;
+            while (true) {
+                List<Long> page = orderSagaStateService.findStaleSagaIds(NON_TERMINAL, cutoff, afterId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                List<CompletableFuture<Void>> running = new ArrayList<>(page.size());
+                for (Long sagaId : page) {
+                    running.add(CompletableFuture.runAsync(() -> recover(sagaId, cutoff), workers));
+                }
+                // the next page is only read once this one is done, which bounds the work in flight
+                CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+                recovered += page.size();
+                afterId = page.get(page.size() - 1);
+            }
+            if (recovered > 0) {
+                log.info("SAGA RECOVERY processed {} stale sagas", recovered);
+            }
+        } catch (Exception e) {
+            log.error("SAGA RECOVERY scan failed", e);
+        }
+    }
+
+    private void recover(Long sagaId, LocalDateTime cutoff) {
+        // another instance or a previous scan may have taken it already
+        if (!orderSagaStateService.claimStaleSaga(sagaId, cutoff)) {
+            return;
+        }
+        try {
+            orderOrchestrator.recoverSaga(sagaId);
+        } catch (Exception e) {
+            log.error("SAGA RECOVERY failed for saga {}, will retry after {} ms", sagaId, staleAfterMs, e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+}
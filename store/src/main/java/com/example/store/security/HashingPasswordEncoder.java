@@ -0,0 +1,106 @@
+package com.example.store.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The store's PasswordEncoder. New hashes are "{bcrypt}" at security.password.bcrypt-strength; hashes without
+ * a prefix (written before it existed) still match as bcrypt and, like hashes of a lower strength, report
+ * upgradeEncoding so DaoAuthenticationProvider rehashes them on the next successful login.
+ * All hashing runs on hash-threads dedicated threads with a queue of queue-capacity, so a burst of logins
+ * takes at most that much CPU; when the queue is full the caller gets a PasswordHashingBusyException.
+ */
+@Component
+@Slf4j
+public class HashingPasswordEncoder implements PasswordEncoder {
+
+    private static final String BCRYPT = "bcrypt";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor hashers;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public HashingPasswordEncoder(MeterRegistry meterRegistry,
+                                  @Value("${security.password.bcrypt-strength:10}") int bcryptStrength,
+                                  @Value("${security.password.hash-threads:0}") int hashThreads,
+                                  @Value("${security.password.queue-capacity:100}") int queueCapacity) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(BCRYPT, Map.of(BCRYPT, bcrypt));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        this.delegate = encoder;
+
+        // 0 leaves half the cores to the rest of the store
+        int threads = hashThreads > 0 ? hashThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hashers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "password-hash-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.encodeTimer = Timer.builder("store.auth.password.hash").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("store.auth.password.hash").tag("operation", "matches").register(meterRegistry);
+        log.info("Password hashing with bcrypt strength {} on {} threads", bcryptStrength, threads);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hash(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hash(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    // cheap, only reads the prefix and the bcrypt cost
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T hash(Callable<T> work) {
+        Future<T> result;
+        try {
+            result = hashers.submit(work);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHashingBusyException("Too many logins in progress, please retry");
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while waiting for password hashing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashers.shutdownNow();
+    }
+}
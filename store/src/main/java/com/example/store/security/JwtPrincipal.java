@@ -0,0 +1,18 @@
+package com.example.store.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+// the authenticated user of a request, taken from the token's claims; id is null for tokens issued without it
+public record JwtPrincipal(Integer id, String username) {
+
+    // every store user has the same single role, so the list is shared by all requests
+    public static final List<GrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    @Override
+    public String toString() {
+        return username;
+    }
+}
@@ -2,6 +2,8 @@ package com.example.store.security;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -15,14 +17,17 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.util.function.Function;
 
 @Service
 public class JwtService {
 
     private final String secret;
     private final long expirationMinutes;
+    private static final String USER_ID_CLAIM = "uid";
+
     private SecretKey secretKey;
+    // immutable and thread safe, built once instead of per token
+    private JwtParser parser;
 
     public JwtService(
             @Value("${security.jwt.secret}") String secret,
@@ -38,11 +43,18 @@ public class JwtService {
             throw new IllegalStateException("JWT secret must be at least 32 characters long");
         }
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(secretKey)
+                .build();
     }
 
     public String generateToken(UserDetails userDetails) {
         Instant now = Instant.now();
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder();
+        if (userDetails instanceof StoreUserDetails storeUser) {
+            builder.claim(USER_ID_CLAIM, storeUser.getId());
+        }
+        return builder
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plus(expirationMinutes, ChronoUnit.MINUTES)))
@@ -50,30 +62,17 @@ public class JwtService {
                 .compact();
     }
 
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
-
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        String username = extractUsername(token);
-        return username.equals(userDetails.getUsername()) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        Date expiration = extractClaim(token, Claims::getExpiration);
-        return expiration.before(new Date());
-    }
-
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
+    /**
+     * Verifies the signature and expiry in one parse and returns who the token belongs to.
+     * Throws a JwtException when the token is not valid.
+     */
+    public JwtPrincipal parsePrincipal(String token) {
         Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        return new JwtPrincipal(claims.get(USER_ID_CLAIM, Integer.class), claims.getSubject());
     }
 
     private Claims extractAllClaims(String token) {
-        Jws<Claims> claimsJws = Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token);
+        Jws<Claims> claimsJws = parser.parseClaimsJws(token);
         return claimsJws.getBody();
     }
 }
@@ -0,0 +1,9 @@
+package com.example.store.security;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+public class PasswordHashingBusyException extends AuthenticationServiceException {
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+}
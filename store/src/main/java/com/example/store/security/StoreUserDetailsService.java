@@ -1,15 +1,20 @@
 package com.example.store.security;
 
+import com.example.store.entity.User;
 import com.example.store.repository.UserRepository;
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
-public class StoreUserDetailsService implements UserDetailsService {
+@Slf4j
+public class StoreUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
     private final UserRepository userRepository;
 
     @Override
@@ -18,4 +23,15 @@ public class StoreUserDetailsService implements UserDetailsService {
                 .map(StoreUserDetails::new)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
     }
+
+    // called after a successful login whose stored hash is outdated, newPassword is already encoded
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        User stored = userRepository.findByUsername(user.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + user.getUsername()));
+        stored.setPasswordHash(newPassword);
+        log.info("Upgraded password hash of user {}", stored.getUsername());
+        return new StoreUserDetails(stored);
+    }
 }
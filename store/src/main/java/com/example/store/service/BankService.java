@@ -5,10 +5,21 @@ import com.example.store.dto.response.BankPaymentResponse;
 import com.example.store.dto.response.BankRefundResponse;
 import com.example.store.entity.Order;
 import com.example.store.entity.OrderSagaState;
-import com.example.store.entity.User;
+import com.example.store.user.UserSummary;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface BankService {
-    BankPaymentResponse processPayment(User user, Order order, OrderRequest orderRequest);
+    BankPaymentResponse processPayment(UserSummary user, Order order, OrderRequest orderRequest);
+
+    // over REST this completes before it returns, over RabbitMQ when the bank's reply arrives
+    CompletableFuture<BankPaymentResponse> processPaymentAsync(UserSummary user, Order order, OrderRequest orderRequest);
+
+    // for a payment whose answer was lost: the bank's successful payment for the order, looked up without posting
+    // anything; its id is stored on the order. Empty when the bank holds no such payment
+    Optional<String> resolvePayment(Integer orderId);
 
+    // an order without a recorded transaction is resolved first, NOT_PAID when the bank never charged it
     BankRefundResponse refund(Integer orderId);
 }
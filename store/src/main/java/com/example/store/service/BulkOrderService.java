@@ -0,0 +1,16 @@
+package com.example.store.service;
+
+import com.example.store.dto.request.OrderRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface BulkOrderService {
+    // a JSON array or NDJSON, one OrderRequest per line
+    List<OrderRequest> readOrders(InputStream body) throws IOException;
+
+    // starts every order and writes one NDJSON result per order as its saga finishes
+    void createOrders(List<OrderRequest> orders, OutputStream out) throws IOException;
+}
@@ -1,20 +1,18 @@
 package com.example.store.service;
 
-import com.example.store.dto.request.DeliveryRequest;
-import com.example.store.dto.request.OrderRequest;
 import com.example.store.dto.response.DeliveryUpdate;
 import com.example.store.entity.Order;
-import com.example.store.entity.User;
+import com.example.store.user.UserSummary;
 
 import java.util.List;
+import java.util.Map;
 
 public interface DeliveryService {
 
     void handleUpdate(DeliveryUpdate deliveryUpdate);
 
-    void scheduleDeliveryRequest(
-            Order order,
-            User user,
-            OrderRequest request,
-            List<Integer> expandedWarehouseIds);
+    // updates of distinct orders applied together, see OrderService.updateStatuses
+    Map<Integer, Boolean> handleUpdates(List<DeliveryUpdate> deliveryUpdates);
+
+    void scheduleDeliveryRequest(Order order, UserSummary user);
 }
@@ -6,9 +6,25 @@ import com.example.store.dto.request.ReserveRequest;
 import com.example.store.dto.response.AvailabilityResponse;
 import com.example.store.dto.response.ReserveResponse;
 
+import java.util.List;
+
 public interface InventoryService {
     AvailabilityResponse plan(AvailabilityRequest req);
     ReserveResponse reserve(ReserveRequest req);
+    // starts the reservation timer for an order's stock; confirm stops it, otherwise the stock is released on expiry
+    void hold(Integer orderId);
+    void holdAll(List<Integer> orderIds);
     void confirm(Integer orderId);
     void release(ReleaseRequest req);
+
+    // cart variants: one stock query / one statement for every line, responses in request order
+    List<AvailabilityResponse> planAll(List<AvailabilityRequest> reqs);
+    List<ReserveResponse> reserveAll(List<ReserveRequest> reqs);
+    // bulk intake: each order is reserved in full or not at all, independently of the others (null when it cannot be);
+    // one lock and one statement for all products of all orders
+    List<List<ReserveResponse>> reserveEach(List<List<ReserveRequest>> orders);
+    void releaseAll(List<ReleaseRequest> reqs);
+
+    // releases the orders whose hold is still unconfirmed and past its expiry, returns the ones released
+    List<Integer> releaseExpired(List<Integer> orderIds);
 }
@@ -2,9 +2,23 @@ package com.example.store.service;
 
 
 import com.example.store.dto.request.OrderRequest;
-import com.example.store.dto.response.OrderResponse;
+import com.example.store.dto.response.OrderSagaResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface OrderOrchestrator {
-    OrderResponse executeOrderCreation(OrderRequest orderRequest);
+    OrderSagaResponse startOrderCreation(OrderRequest orderRequest);
+
+    // a repeated key returns the saga the first request started instead of starting another one
+    OrderSagaResponse startOrderCreation(OrderRequest orderRequest, String idempotencyKey);
+
+    // one future per request, in request order, each completed with the saga once it has finished
+    List<CompletableFuture<OrderSagaResponse>> startBulkOrderCreation(List<OrderRequest> orderRequests);
+
+    OrderSagaResponse getSaga(Long sagaId);
     void executeRefund(Integer orderId);
+
+    // resumes a stuck saga when the customer has paid, compensates it otherwise
+    void recoverSaga(Long sagaId);
 }
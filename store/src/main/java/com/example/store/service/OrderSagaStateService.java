@@ -1,20 +1,29 @@
 package com.example.store.service;
 
 import com.example.store.entity.OrderSagaState;
+import com.example.store.entity.SagaStatus;
+import com.example.store.entity.SagaTransition;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface OrderSagaStateService {
     OrderSagaState initiateSaga(Integer productId, Integer quantity);
 
-    OrderSagaState updateSagaToUserValidated(OrderSagaState saga, String currentStep);
-    OrderSagaState updateSagaToInventoryAvailable(OrderSagaState saga, String currentStep);
-    OrderSagaState updateSagaToInventoryReserved(OrderSagaState saga, String currentStep);
-    OrderSagaState updateSagaToOrderCreated(OrderSagaState saga, String currentStep, Integer orderId);
-    OrderSagaState updateSagaToPaymentCompleted(OrderSagaState saga, String currentStep, String transactionId);
-    OrderSagaState updateSagaToDeliveryRequested(OrderSagaState saga, String currentStep);
+    // bulk intake: one batch insert for all sagas, returned in the order given
+    List<OrderSagaState> initiateSagas(List<Integer> productIds, List<Integer> quantities);
 
-    OrderSagaState complete(OrderSagaState saga, String currentStep);
+    // records a step in memory only, nothing is written until flush
+    void stage(OrderSagaState saga, SagaStatus status, String currentStep);
+
+    // appends all staged steps to the transition log in one batch and derives the saga row from it;
+    // must be called before every remote call so recovery sees each step preceding a side effect
+    OrderSagaState flush(OrderSagaState saga);
+
+    // flush for many sagas at once, two batched statements whatever their number
+    void flushAll(List<OrderSagaState> sagas);
 
     OrderSagaState updateSagaToCompensating(OrderSagaState saga, String currentStep);
     OrderSagaState updateSagaToCompensated(OrderSagaState saga, String currentStep);
@@ -23,4 +32,11 @@ public interface OrderSagaStateService {
 
     Optional<OrderSagaState> findById(Long sagaId);
 
+    List<SagaTransition> findTransitions(Long sagaId);
+
+    // ids of sagas in one of the given statuses that have not moved since the cutoff
+    List<Long> findStaleSagaIds(Collection<SagaStatus> statuses, LocalDateTime cutoff, Long afterId, int limit);
+
+    boolean claimStaleSaga(Long sagaId, LocalDateTime cutoff);
+
 }
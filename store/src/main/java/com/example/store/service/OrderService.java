@@ -1,22 +1,37 @@
 package com.example.store.service;
 
+import com.example.store.dto.request.OrderHistoryQuery;
 import com.example.store.dto.request.OrderRequest;
+import com.example.store.dto.response.OrderHistoryResponse;
 import com.example.store.dto.response.OrderResponse;
 import com.example.store.entity.DeliveryStatus;
 import com.example.store.entity.Order;
-import com.example.store.entity.User;
+import com.example.store.entity.OrderLine;
+import com.example.store.user.UserSummary;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface OrderService {
     OrderResponse getOrder(Integer orderId);
     List<OrderResponse> getAllOrders(Integer userId);
+    OrderHistoryResponse getOrderHistory(Integer userId, OrderHistoryQuery query);
     void updateStatus(Integer orderId, DeliveryStatus status);
+
+    // one UPDATE for all orders, stale transitions are skipped by DeliveryStatus rank;
+    // true for an applied status, false for a rejected one, no entry for an order that does not exist
+    Map<Integer, Boolean> updateStatuses(Map<Integer, DeliveryStatus> statuses);
     Optional<Order> findByIdWithUser(Integer orderId);
     Optional<Order> findById(Integer orderId);
+
+    // the owner of an order without loading the order or its user
+    Optional<Integer> findUserId(Integer orderId);
     Optional<List<Order>> findByUserId(Integer userId);
-    Order initiateOrder(User user, OrderRequest request, List<Integer> expandedWarehouseIds);
+    Order initiateOrder(UserSummary user, OrderRequest request, List<OrderLine> lines);
+
+    // bulk intake: orders and their lines inserted in two JDBC batches, returned in request order
+    List<Order> initiateOrders(List<UserSummary> users, List<OrderRequest> requests, List<List<OrderLine>> lines);
     void cancelOrder(Integer orderId);
     void updateBankTransactionId(int id, String transactionId);
 
@@ -1,9 +1,18 @@
 package com.example.store.service;
 
+import com.example.store.dto.request.ProductCatalogQuery;
+import com.example.store.dto.response.ProductPageResponse;
 import com.example.store.dto.response.ProductStockResponse;
+import com.example.store.dto.response.ProductStockSnapshot;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface ProductInventoryService {
     List<ProductStockResponse> getProductStockSnapshot();
+    ProductStockSnapshot getVersionedProductStock();
+    ProductPageResponse getProductPage(ProductCatalogQuery query);
+    // writes every matching product as one JSON array while reading it from a database cursor
+    void streamProducts(ProductCatalogQuery query, OutputStream out) throws IOException;
 }
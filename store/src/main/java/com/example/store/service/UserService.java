@@ -2,12 +2,17 @@ package com.example.store.service;
 
 
 import com.example.store.entity.User;
+import com.example.store.user.UserSummary;
 
 import java.util.Optional;
 
 public interface UserService {
     Optional<User> findById(Integer id);
     Optional<User> findByUsername(String username);
+
+    // cached, for code that only needs names, email and bank account
+    Optional<UserSummary> findSummaryById(Integer id);
+    Optional<UserSummary> findSummaryByUsername(String username);
     User registerUser(String username,
                       String rawPassword,
                       String email,
@@ -1,45 +1,84 @@
 package com.example.store.service.impl;
 
+import com.example.store.bank.BankCircuitBreaker;
+import com.example.store.bank.BankPaymentGateway;
 import com.example.store.dto.request.BankPaymentRequest;
 import com.example.store.dto.request.BankRefundRequest;
 import com.example.store.dto.request.OrderRequest;
 import com.example.store.dto.response.BankPaymentResponse;
 import com.example.store.dto.response.BankRefundResponse;
+import com.example.store.dto.response.BankTransactionResponse;
 import com.example.store.entity.Order;
-import com.example.store.entity.User;
 import com.example.store.exception.OrderException;
 import com.example.store.service.BankService;
 import com.example.store.service.OrderService;
+import com.example.store.user.UserSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 
 @Service
+@Slf4j
 public class BankServiceImpl implements BankService {
     private final RestTemplate restTemplate;
     private final OrderService orderService;
+    private final BankCircuitBreaker circuitBreaker;
+    private final BankPaymentGateway paymentGateway;
+    private final String paymentMode;
 
-    public BankServiceImpl(RestTemplate restTemplate, OrderService orderService) {
+    public BankServiceImpl(@Qualifier("bankRestTemplate") RestTemplate restTemplate, OrderService orderService,
+                           BankCircuitBreaker circuitBreaker, BankPaymentGateway paymentGateway,
+                           @Value("${store.bank.payment.mode:rest}") String paymentMode) {
         this.restTemplate = restTemplate;
         this.orderService = orderService;
+        this.circuitBreaker = circuitBreaker;
+        this.paymentGateway = paymentGateway;
+        this.paymentMode = paymentMode;
     }
 
     @Override
-    public BankPaymentResponse processPayment(User user, Order order, OrderRequest request) {
-        String bankUrl = "http://bank-app:8083/api/bank/payment";
-//        String bankUrl = "http://localhost:8083/api/bank/payment";
-        BankPaymentRequest paymentRequest = BankPaymentRequest.builder()
+    public BankPaymentResponse processPayment(UserSummary user, Order order, OrderRequest request) {
+        // relative to store.bank.base-url
+        String bankUrl = "/api/bank/payment";
+        BankPaymentRequest paymentRequest = toPaymentRequest(user, order, request);
+
+        // fails fast with BankUnavailableException while the bank circuit is open
+        BankPaymentResponse paymentResponse = circuitBreaker.call("payment",
+                () -> restTemplate.postForObject(bankUrl, paymentRequest, BankPaymentResponse.class));
+        return paid(order, paymentResponse);
+    }
+
+    @Override
+    public CompletableFuture<BankPaymentResponse> processPaymentAsync(UserSummary user, Order order, OrderRequest request) {
+        if (!"messaging".equals(paymentMode)) {
+            try {
+                return CompletableFuture.completedFuture(processPayment(user, order, request));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return paymentGateway.requestPayment(toPaymentRequest(user, order, request))
+                .thenApply(paymentResponse -> paid(order, paymentResponse));
+    }
+
+    private BankPaymentRequest toPaymentRequest(UserSummary user, Order order, OrderRequest request) {
+        return BankPaymentRequest.builder()
                 .orderId(order.getId())
-                .fromAccount(user.getBankAccountId())
+                .fromAccount(user.bankAccountId())
                 .toAccount("STORE_MAIN")
                 .amount(BigDecimal.valueOf(request.getTotalAmount()))
                 .build();
+    }
 
-        BankPaymentResponse paymentResponse = restTemplate.postForObject(
-                bankUrl, paymentRequest, BankPaymentResponse.class);
-
+    private BankPaymentResponse paid(Order order, BankPaymentResponse paymentResponse) {
         if (paymentResponse == null || !"SUCCESS".equals(paymentResponse.getStatus())) {
             throw new OrderException("Payment failed");
         }
@@ -47,23 +86,56 @@ public class BankServiceImpl implements BankService {
         return paymentResponse;
     }
 
+    @Override
+    public Optional<String> resolvePayment(Integer orderId) {
+        Order order = orderService.findById(orderId)
+                .orElseThrow(() -> new OrderException("Order not found"));
+        return resolvePayment(order);
+    }
+
+    // read-only: a payment is never posted again just to find out whether the first one went through
+    private Optional<String> resolvePayment(Order order) {
+        BankTransactionResponse[] transactions = circuitBreaker.call("lookup",
+                () -> restTemplate.getForObject("/api/bank/order/{orderId}/transactions",
+                        BankTransactionResponse[].class, order.getId()));
+        if (transactions == null) {
+            return Optional.empty();
+        }
+        Optional<String> transactionId = Arrays.stream(transactions)
+                .filter(transaction -> "PAYMENT".equals(transaction.getType()) && "SUCCESS".equals(transaction.getStatus()))
+                .map(BankTransactionResponse::getTransactionId)
+                .findFirst();
+        transactionId.ifPresent(id -> {
+            orderService.updateBankTransactionId(order.getId(), id);
+            log.warn("Resolved payment of order {} as transaction {}", order.getId(), id);
+        });
+        return transactionId;
+    }
+
     @Override
     public BankRefundResponse refund(Integer orderId) {
         Order order = orderService.findByIdWithUser(orderId)
                 .orElseThrow(() -> new OrderException("Order not found"));
-        String bankUrl = "http://bank-app:8083/api/bank/refund";
-//        String bankUrl = "http://localhost:8083/api/bank/refund";
+        String transactionId = order.getBankTransactionId();
+        if (transactionId == null) {
+            Optional<String> resolved = resolvePayment(order);
+            if (resolved.isEmpty()) {
+                BankRefundResponse notPaid = new BankRefundResponse();
+                notPaid.setStatus(BankRefundResponse.NOT_PAID);
+                notPaid.setMessage("The bank holds no payment for order " + orderId);
+                return notPaid;
+            }
+            transactionId = resolved.get();
+        }
+        String bankUrl = "/api/bank/refund";
         BankRefundRequest refundRequest = BankRefundRequest.builder()
                 .orderId(order.getId())
-                .originalTransactionId(order.getBankTransactionId())
+                .originalTransactionId(transactionId)
                 .amount(BigDecimal.valueOf(order.getTotalAmount()))
                 .build();
 
-        BankRefundResponse refundResponse = restTemplate.postForObject(
-                bankUrl,
-                refundRequest,
-                BankRefundResponse.class
-        );
+        BankRefundResponse refundResponse = circuitBreaker.call("refund",
+                () -> restTemplate.postForObject(bankUrl, refundRequest, BankRefundResponse.class));
         return refundResponse;
     }
 
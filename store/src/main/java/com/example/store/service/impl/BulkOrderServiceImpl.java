@@ -0,0 +1,113 @@
+package com.example.store.service.impl;
+
+import com.example.store.dto.request.OrderRequest;
+import com.example.store.dto.response.BulkOrderResult;
+import com.example.store.dto.response.OrderSagaResponse;
+import com.example.store.exception.OrderException;
+import com.example.store.service.BulkOrderService;
+import com.example.store.service.OrderOrchestrator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class BulkOrderServiceImpl implements BulkOrderService {
+
+    private static final String REJECTED = "REJECTED";
+
+    private final OrderOrchestrator orderOrchestrator;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int maxOrders;
+
+    public BulkOrderServiceImpl(OrderOrchestrator orderOrchestrator,
+                                ObjectMapper objectMapper,
+                                Validator validator,
+                                @Value("${store.orders.bulk.max-orders:1000}") int maxOrders) {
+        this.orderOrchestrator = orderOrchestrator;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.maxOrders = maxOrders;
+    }
+
+    @Override
+    public List<OrderRequest> readOrders(InputStream body) throws IOException {
+        List<OrderRequest> orders = new ArrayList<>();
+        // a root level array is unwrapped, otherwise the values are read one after another
+        try (MappingIterator<OrderRequest> values = objectMapper.readerFor(OrderRequest.class).readValues(body)) {
+            while (values.hasNextValue()) {
+                if (orders.size() == maxOrders) {
+                    throw new OrderException("A bulk request takes at most " + maxOrders + " orders");
+                }
+                orders.add(values.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new OrderException("Unreadable order at position " + orders.size() + ": " + e.getOriginalMessage());
+        }
+        if (orders.isEmpty()) {
+            throw new OrderException("A bulk request needs at least one order");
+        }
+        return orders;
+    }
+
+    @Override
+    public void createOrders(List<OrderRequest> orders, OutputStream out) throws IOException {
+        BlockingQueue<BulkOrderResult> finished = new LinkedBlockingQueue<>();
+        List<Integer> accepted = new ArrayList<>();
+        List<OrderRequest> valid = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            Set<ConstraintViolation<OrderRequest>> violations = validator.validate(orders.get(i));
+            if (violations.isEmpty()) {
+                accepted.add(i);
+                valid.add(orders.get(i));
+            } else {
+                finished.add(new BulkOrderResult(i, null, null, REJECTED, violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .collect(Collectors.joining(", "))));
+            }
+        }
+
+        List<CompletableFuture<OrderSagaResponse>> sagas = valid.isEmpty()
+                ? List.of()
+                : orderOrchestrator.startBulkOrderCreation(valid);
+        for (int i = 0; i < sagas.size(); i++) {
+            int index = accepted.get(i);
+            sagas.get(i).whenComplete((saga, error) -> finished.add(error == null
+                    ? new BulkOrderResult(index, saga.getSagaId(), saga.getOrderId(), saga.getStatus().name(), saga.getErrorMessage())
+                    : new BulkOrderResult(index, null, null, REJECTED, error.getMessage())));
+        }
+
+        // results go out in the order the sagas finish, each line flushed on its own
+        for (int written = 0; written < orders.size(); written++) {
+            BulkOrderResult result;
+            try {
+                result = finished.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Bulk response interrupted after {} of {} results", written, orders.size());
+                return;
+            }
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write("\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+}
@@ -2,82 +2,54 @@ package com.example.store.service.impl;
 
 
 import com.example.store.config.RabbitMQConfig;
+import com.example.store.delivery.DeliveryRequestScheduler;
 import com.example.store.dto.request.DeliveryRequest;
-import com.example.store.dto.request.OrderRequest;
 import com.example.store.dto.response.DeliveryUpdate;
 import com.example.store.entity.DeliveryStatus;
 import com.example.store.entity.Order;
-import com.example.store.entity.User;
-import com.example.store.exception.OrderSagaException;
-import com.example.store.messaging.CustomCorrelationData;
+import com.example.store.entity.OrderLine;
+import com.example.store.outbox.MessageOutbox;
 import com.example.store.service.DeliveryService;
-import com.example.store.service.EmailService;
 import com.example.store.service.OrderService;
+import com.example.store.user.UserSummary;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.connection.Connection;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class DeliveryServiceImpl implements DeliveryService {
-    private final RabbitTemplate rabbitTemplate;
+    private final MessageOutbox messageOutbox;
     private final OrderService orderService;
-    private final EmailService emailService;
+    private final DeliveryRequestScheduler deliveryRequestScheduler;
     private final long deliveryRequestDelayMs;
 
 
-    public DeliveryServiceImpl(RabbitTemplate rabbitTemplate,
+    public DeliveryServiceImpl(MessageOutbox messageOutbox,
                                @Lazy OrderService orderService,
-                               @Lazy EmailService emailService,
+                               DeliveryRequestScheduler deliveryRequestScheduler,
                                @Value("${store.delivery.request-delay-ms:10000}") long deliveryRequestDelayMs) {
-        this.rabbitTemplate = rabbitTemplate;
+        this.messageOutbox = messageOutbox;
         this.orderService = orderService;
-        this.emailService = emailService;
+        this.deliveryRequestScheduler = deliveryRequestScheduler;
         this.deliveryRequestDelayMs = deliveryRequestDelayMs;
 
     }
 
     public void requestDelivery(DeliveryRequest deliveryRequest) {
         log.info("SENDING deliveryRequest={}", deliveryRequest);
-        try {
-            CustomCorrelationData correlationData = CustomCorrelationData.builder()
-                    .id("order-" +  deliveryRequest.getOrderId() +"-"+ UUID.randomUUID())
-                    .queueType(RabbitMQConfig.DELIVERY_REQUEST_QUEUE)
-                    .orderId(deliveryRequest.getOrderId())
-                    .build();
-
-            // callback to handle future confirm
-            correlationData.getFuture().whenComplete((r, e) -> {
-               if (e != null) {
-                    emailService.sendAlertFailedDeliveryEmail(deliveryRequest.getOrderId());
-               } else if (r != null && r.isAck()){
-                   return;
-               } else{
-                   // NACK
-                   emailService.sendAlertFailedDeliveryEmail(deliveryRequest.getOrderId());
-               }
-            });
-
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.STORE_EXCHANGE,
-                    RabbitMQConfig.DELIVERY_REQUEST_KEY,
-                    deliveryRequest,
-                    correlationData);
-
-        } catch (Exception e) {
-            log.error("deliveryRequest={}", deliveryRequest, e.getMessage());
-            throw new RuntimeException("Failed to deliver delivery request");
-        }
+        // published by OutboxRelay, which alerts by email if the broker never takes it
+        messageOutbox.add(
+                RabbitMQConfig.STORE_EXCHANGE,
+                RabbitMQConfig.DELIVERY_REQUEST_KEY,
+                deliveryRequest,
+                deliveryRequest.getOrderId());
     }
 
     @Override
@@ -86,59 +58,47 @@ public class DeliveryServiceImpl implements DeliveryService {
     }
 
     @Override
-    public void scheduleDeliveryRequest(
-            Order order,
-            User user,
-            OrderRequest request,
-            List<Integer> expandedWarehouseIds) {
-
-        try {
-            Connection connection = rabbitTemplate.getConnectionFactory().createConnection();
-            connection.close();
-            log.info("CONNECTION: Message queue connection validated");
-        } catch (Exception e) {
-            log.error("CONNECTION FAILED: Message Queue unreachable", e);
-            throw new OrderSagaException("Message queue unavailable " + e.getMessage());
-        }
-
+    public Map<Integer, Boolean> handleUpdates(List<DeliveryUpdate> deliveryUpdates) {
+        Map<Integer, DeliveryStatus> statuses = new LinkedHashMap<>();
+        deliveryUpdates.forEach(update -> statuses.put(update.getOrderId(), update.getStatus()));
+        return orderService.updateStatuses(statuses);
+    }
 
-        List<Integer> distinctWarehouseIds = expandedWarehouseIds.stream()
+    @Override
+    public void scheduleDeliveryRequest(Order order, UserSummary user) {
+        List<Integer> distinctWarehouseIds = order.getWarehouseIds().stream()
                 .distinct()
                 .collect(Collectors.toList());
 
+        // one delivery request for the whole cart
         DeliveryRequest deliveryRequest = new DeliveryRequest(
                 order.getId(),
-                user.getFirstName() + " " + user.getLastName(),
-                user.getEmail(),
+                user.fullName(),
+                user.email(),
                 "Sydney",
-                request.getQuantity(),
-                distinctWarehouseIds
+                order.getQuantity(),
+                distinctWarehouseIds,
+                toDeliveryLines(order)
         );
 
-        Runnable task = () -> {
-            try {
-                Optional<Order> latestOrder = orderService.findById(order.getId());
-                if (latestOrder.isEmpty()) {
-                    log.warn("Order {} not found when attempting to send delayed delivery request", order.getId());
-                    return;
-                }
-
-                String status = latestOrder.get().getStatus();
-                if (DeliveryStatus.CANCELLED.name().equals(status)) {
-                    log.info("DELIVERY REQUEST CANCELLED FOR ORDER {} BEFORE SNEDING DELIVERY", order.getId());
-                    return;
-                }
+        // a row in store.delivery_schedule in the caller's transaction, moved to the outbox once it is due
+        deliveryRequestScheduler.schedule(deliveryRequest, System.currentTimeMillis() + deliveryRequestDelayMs);
+    }
 
-                log.info("Sending delayed delivery request for order {}", order.getId());
-                requestDelivery(deliveryRequest);
-            } catch (Exception ex) {
-                log.error("Failed to send delayed delivery request for order {}", order.getId(), ex);
-            }
-        };
+    private List<DeliveryRequest.Line> toDeliveryLines(Order order) {
+        return order.getLines().stream()
+                .map(line -> new DeliveryRequest.Line(
+                        line.getProductId(),
+                        line.getQuantity(),
+                        toAllocations(line)))
+                .collect(Collectors.toList());
+    }
 
-        CompletableFuture.runAsync(
-                task,
-                CompletableFuture.delayedExecutor(deliveryRequestDelayMs, TimeUnit.MILLISECONDS)
-        );
+    private List<DeliveryRequest.Allocation> toAllocations(OrderLine line) {
+        Map<Integer, Long> unitsPerWarehouse = line.getWarehouseIds().stream()
+                .collect(Collectors.groupingBy(warehouseId -> warehouseId, Collectors.counting()));
+        return unitsPerWarehouse.entrySet().stream()
+                .map(entry -> new DeliveryRequest.Allocation(entry.getKey(), entry.getValue().intValue()))
+                .collect(Collectors.toList());
     }
 }
@@ -6,41 +6,34 @@ import com.example.store.config.RabbitMQConfig;
 import com.example.store.dto.request.StatusEmailDto;
 import com.example.store.entity.DeliveryStatus;
 import com.example.store.entity.EmailType;
-import com.example.store.entity.Order;
-import com.example.store.entity.User;
-import com.example.store.messaging.CustomCorrelationData;
+import com.example.store.outbox.MessageOutbox;
 import com.example.store.service.EmailService;
 import com.example.store.service.OrderService;
+import com.example.store.service.UserService;
+import com.example.store.user.UserSummary;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.util.UUID;
-
 @Service
 @Slf4j
 public class EmailServiceImpl implements EmailService {
 
-    private final RabbitTemplate rabbitTemplate;
+    private final MessageOutbox messageOutbox;
     private final OrderService orderService;
+    private final UserService userService;
 
-    public EmailServiceImpl(RabbitTemplate rabbitTemplate, OrderService orderService) {
-        this.rabbitTemplate = rabbitTemplate;
+    public EmailServiceImpl(MessageOutbox messageOutbox, OrderService orderService, UserService userService) {
+        this.messageOutbox = messageOutbox;
         this.orderService = orderService;
+        this.userService = userService;
     }
 
 
+    // no @Async: the outbox row is a plain insert and belongs in the caller's transaction
     @Override
-    @Async
     public void sendStatusEmail(Integer orderId,  DeliveryStatus status) {
         try {
-            Order order = orderService.findByIdWithUser(orderId).orElseThrow(
-                    () -> new RuntimeException(String.format("The order id %d is not found!", orderId))
-            );
-
-            User user = order.getUser();
-
+            UserSummary user = findRecipient(orderId);
 
             EmailType emailType;
             try {
@@ -51,26 +44,19 @@ public class EmailServiceImpl implements EmailService {
             }
 
             StatusEmailDto statusEmailDto = StatusEmailDto.builder()
-                    .recipient(user.getEmail())
+                    .recipient(user.email())
                     .subject(EmailConfig.getSubject(emailType, orderId))
                     .body(EmailConfig.getBody(emailType, orderId))
                     .emailType(emailType)
                     .orderId(orderId)
                     .build();
 
-            CustomCorrelationData correlationData = CustomCorrelationData.builder()
-                    .id("order-" +  orderId +"-"+ UUID.randomUUID())
-                    .queueType(RabbitMQConfig.EMAIL_QUEUE)
-                    .orderId(orderId)
-                    .build();
-
-
             log.info("EMAIL SENDING FOR ORDERID {}  WITH EMAIL TYPE: {}", statusEmailDto.getOrderId(), statusEmailDto.getEmailType());
-            rabbitTemplate.convertAndSend(
+            messageOutbox.add(
                     RabbitMQConfig.STORE_EXCHANGE,
                     RabbitMQConfig.EMAIL_KEY,
                     statusEmailDto,
-                    correlationData
+                    orderId
             );
         } catch (Exception e) {
             log.info("EMAIL SENDING FAILED of order {}: {} ", orderId, e.getMessage(), e);
@@ -78,39 +64,38 @@ public class EmailServiceImpl implements EmailService {
     }
 
     @Override
-    @Async
     public void sendAlertFailedDeliveryEmail(Integer orderId) {
         try{
-            Order order = orderService.findByIdWithUser(orderId).orElseThrow(
-                    () -> new RuntimeException(String.format("The order id %d is not found!", orderId))
-            );
-
-            User user = order.getUser();
+            UserSummary user = findRecipient(orderId);
             EmailType emailType = EmailType.FAILED_PROCESSING;
 
 
-            CustomCorrelationData correlationData = CustomCorrelationData.builder()
-                    .id("order-" +  orderId +"-"+ UUID.randomUUID())
-                    .queueType(RabbitMQConfig.EMAIL_QUEUE)
-                    .orderId(orderId)
-                    .build();
-
             StatusEmailDto statusEmailDto = StatusEmailDto.builder()
-                    .recipient(user.getEmail())
+                    .recipient(user.email())
                     .body(EmailConfig.getBody(emailType, orderId))
                     .subject(EmailConfig.getSubject(emailType, orderId))
                     .orderId(orderId)
                     .emailType(emailType)
                     .build();
-            rabbitTemplate.convertAndSend(
+            messageOutbox.add(
                     RabbitMQConfig.STORE_EXCHANGE,
                     RabbitMQConfig.EMAIL_KEY,
                     statusEmailDto,
-                    correlationData
+                    orderId
             );
         }catch (Exception e){
             log.info("ALERT EMAIL SENDING FAILED of order {}: {} ", orderId, e.getMessage(), e);
         }
     }
 
+    // the order's user_id, then the cached summary; neither the order nor the user entity is loaded
+    private UserSummary findRecipient(Integer orderId) {
+        Integer userId = orderService.findUserId(orderId).orElseThrow(
+                () -> new RuntimeException(String.format("The order id %d is not found!", orderId))
+        );
+        return userService.findSummaryById(userId).orElseThrow(
+                () -> new RuntimeException(String.format("The user of order id %d is not found!", orderId))
+        );
+    }
+
 }
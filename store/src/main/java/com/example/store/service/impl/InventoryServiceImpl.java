@@ -1,96 +1,504 @@
 package com.example.store.service.impl;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.example.store.dto.request.AvailabilityRequest;
 import com.example.store.dto.request.ReleaseRequest;
 import com.example.store.dto.request.ReserveRequest;
 import com.example.store.dto.response.AvailabilityResponse;
 import com.example.store.dto.response.ReserveResponse;
+import com.example.store.entity.Order;
 import com.example.store.entity.WarehouseStock;
+import com.example.store.event.StockChangedEvent;
+import com.example.store.inventory.ReservationExpiry;
+import com.example.store.inventory.StockIndex;
+import com.example.store.inventory.StockLedger;
+import com.example.store.inventory.allocation.AllocationStrategy;
+import com.example.store.repository.OrderRepository;
 import com.example.store.repository.WarehouseStockRepository;
 import com.example.store.service.*;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import java.sql.Timestamp;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class InventoryServiceImpl implements InventoryService{
     private final WarehouseStockRepository repo;
+    private final JdbcTemplate jdbcTemplate;
+    private final StockLedger ledger;
+    private final ReservationExpiry reservationExpiry;
+    private final OrderRepository orderRepository;
+    private final StockIndex stockIndex;
+    private final AllocationStrategy allocationStrategy;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // one round trip for every allocation of every line; the quantity guard makes a stale plan fail instead of overselling
+    private static final String RESERVE_SQL = """
+            UPDATE store.warehouse_stock ws
+            SET quantity = ws.quantity - alloc.qty
+            FROM unnest(?::int[], ?::int[], ?::int[]) AS alloc(product_id, warehouse_id, qty)
+            WHERE ws.product_id = alloc.product_id
+              AND ws.warehouse_id = alloc.warehouse_id
+              AND ws.quantity >= alloc.qty
+            """;
+
+    private static final String RELEASE_SQL = """
+            UPDATE store.warehouse_stock ws
+            SET quantity = ws.quantity + alloc.qty
+            FROM unnest(?::int[], ?::int[], ?::int[]) AS alloc(product_id, warehouse_id, qty)
+            WHERE ws.product_id = alloc.product_id
+              AND ws.warehouse_id = alloc.warehouse_id
+            """;
+
+    private static final String HOLD_SQL = """
+            INSERT INTO store.inventory_reservation (order_id, status, expires_at)
+            VALUES (?, 'HELD', ?)
+            """;
+
+    private static final String CONFIRM_SQL = """
+            UPDATE store.inventory_reservation
+            SET status = 'CONFIRMED', updated_at = now()
+            WHERE order_id = ? AND status IN ('HELD', 'CONFIRMED')
+            """;
+
+    // a hold can end only once, whoever flips it gives the stock back
+    private static final String END_HOLDS_SQL = """
+            UPDATE store.inventory_reservation
+            SET status = 'RELEASED', updated_at = now()
+            WHERE order_id = ANY(?) AND status IN ('HELD', 'CONFIRMED')
+            RETURNING order_id
+            """;
+
+    private static final String TRACKED_SQL = """
+            SELECT order_id FROM store.inventory_reservation WHERE order_id = ANY(?)
+            """;
+
+    private static final String EXPIRE_SQL = """
+            UPDATE store.inventory_reservation
+            SET status = 'EXPIRED', updated_at = now()
+            WHERE order_id = ANY(?) AND status = 'HELD' AND expires_at <= ?
+            RETURNING order_id
+            """;
 
     @Override
     public AvailabilityResponse plan(AvailabilityRequest req) {
-        // no lock
-        List<WarehouseStock> rows = repo.findAllForProduct(req.getProductId());;
+        return planAll(List.of(req)).get(0);
+    }
 
-        int needed = req.getQuantity();
-        List<AvailabilityResponse.WarehouseAllocation> plan = new ArrayList<>();
+    @Override
+    public List<AvailabilityResponse> planAll(List<AvailabilityRequest> reqs) {
+        // no lock and, once a product is indexed, no query either
+        Set<Integer> fromIndex = reqs.stream()
+                .map(AvailabilityRequest::getProductId)
+                .filter(productId -> !ledger.tracks(productId))
+                .collect(Collectors.toSet());
+        Map<Integer, List<WarehouseStock>> rows = fromIndex.isEmpty()
+                ? Map.of()
+                : stockIndex.stockedFor(fromIndex);
 
-        for (var ws : rows) {
-            int avail = Math.max(0, ws.getQuantity());
-            if (avail <= 0) continue;
-            int take = Math.min(avail, needed);
-            if (take > 0) plan.add(new AvailabilityResponse.WarehouseAllocation(ws.getWarehouseId(), take));
-            needed -= take;
-            if (needed == 0) break;
+        List<AvailabilityResponse> plans = new ArrayList<>(reqs.size());
+        Set<Integer> rejectedFromIndex = new HashSet<>();
+        for (var req : reqs) {
+            List<WarehouseStock> stock = ledger.tracks(req.getProductId())
+                    ? ledger.snapshot(req.getProductId())
+                    : rows.getOrDefault(req.getProductId(), List.of());
+            AvailabilityResponse plan = allocate(stock, req.getQuantity());
+            if (!plan.isCanFulfill() && fromIndex.contains(req.getProductId())) {
+                rejectedFromIndex.add(req.getProductId());
+            }
+            plans.add(plan);
+        }
+        if (rejectedFromIndex.isEmpty()) {
+            return plans;
         }
 
-        var res = new AvailabilityResponse();
-        res.setCanFulfill(needed == 0);
-        res.setAllocations(plan);
-        return res;
+        // an entry loaded while a release committed can stay too low, and a rejected order never reaches
+        // reserveAll to evict it; so the index is never the only reason to say no
+        rejectedFromIndex.forEach(stockIndex::evict);
+        Map<Integer, List<WarehouseStock>> fresh = stockIndex.stockedFor(rejectedFromIndex);
+        for (int i = 0; i < reqs.size(); i++) {
+            AvailabilityRequest req = reqs.get(i);
+            if (rejectedFromIndex.contains(req.getProductId())) {
+                plans.set(i, allocate(fresh.getOrDefault(req.getProductId(), List.of()), req.getQuantity()));
+            }
+        }
+        return plans;
     }
 
+    // the self-calls to reserveAll/releaseAll skip the proxy, so the transaction has to start here
     @Override
     @Transactional
     public ReserveResponse reserve(ReserveRequest req) {
-        // Plan under lock and immediately apply
-        var plan = plan(new AvailabilityRequest(){{
-        setProductId(req.getProductId()); setQuantity(req.getQuantity());
-        }});
-        if (!plan.isCanFulfill()) throw new IllegalStateException("Insufficient stock for product=" + req.getProductId());
+        return reserveAll(List.of(req)).get(0);
+    }
 
-        List<ReleaseRequest.Alloc> applied = new ArrayList<>();
+    @Override
+    @Transactional
+    public List<ReserveResponse> reserveAll(List<ReserveRequest> reqs) {
+        publishStockChanged(reqs.stream().map(ReserveRequest::getProductId).collect(Collectors.toSet()));
+        ReserveResponse[] responses = new ReserveResponse[reqs.size()];
+        List<Integer> fromDb = new ArrayList<>();
+        for (int i = 0; i < reqs.size(); i++) {
+            if (ledger.tracks(reqs.get(i).getProductId())) {
+                responses[i] = reserveFromLedger(reqs.get(i));
+            } else {
+                fromDb.add(i);
+            }
+        }
+        if (fromDb.isEmpty()) {
+            return List.of(responses);
+        }
 
-        for (var a : plan.getAllocations()) {
-            var row = repo.findByWarehouseIdAndProductId(a.getWarehouseId(), req.getProductId())
-                .orElseThrow();
-            if (row.getQuantity() < a.getAvailable())
-                throw new IllegalStateException("Concurrent update detected");
-            row.setQuantity(row.getQuantity() - a.getAvailable());
-            repo.save(row);
+        // Plan under the row locks, so the decrement below can never lose a race and needs no retry
+        Set<Integer> productIds = fromDb.stream().map(i -> reqs.get(i).getProductId()).collect(Collectors.toSet());
+        Map<Integer, List<WarehouseStock>> locked = groupByProduct(repo.findAllForProductsForUpdate(productIds));
 
-            var alloc = new ReleaseRequest.Alloc();
-                alloc.setWarehouseId(a.getWarehouseId());
-                alloc.setQty(a.getAvailable());
-                applied.add(alloc);
+        Map<Integer, List<ReleaseRequest.Alloc>> allocations = new LinkedHashMap<>();
+        for (int i : fromDb) {
+            var req = reqs.get(i);
+            var plan = allocate(locked.getOrDefault(req.getProductId(), List.of()), req.getQuantity());
+            if (!plan.isCanFulfill()) {
+                // the index told the saga otherwise, reload it on the next plan
+                stockIndex.evict(req.getProductId());
+                throw new IllegalStateException("Insufficient stock for product=" + req.getProductId());
+            }
+
+            List<ReleaseRequest.Alloc> applied = toAllocs(plan);
+            allocations.put(req.getProductId(), applied);
+            responses[i] = toReserveResponse(req, applied);
         }
 
-        log.info("RESERVE order={} product={} allocations={}", req.getOrderId(), req.getProductId(), applied);
-        var resp = new ReserveResponse();
-        resp.setOrderId(req.getOrderId());
-        resp.setProductId(req.getProductId());
-        resp.setAllocations(applied);
-        return resp;
+        if (!applyAllocations(RESERVE_SQL, allocations))
+            throw new IllegalStateException("Concurrent update detected");
+        afterCommit(() -> allocations.forEach((productId, applied) -> stockIndex.apply(productId, applied, -1)));
+
+        for (int i : fromDb) {
+            log.info("RESERVE order={} product={} allocations={}", reqs.get(i).getOrderId(), reqs.get(i).getProductId(), responses[i].getAllocations());
+        }
+        return List.of(responses);
     }
 
     @Override
+    @Transactional
+    public List<List<ReserveResponse>> reserveEach(List<List<ReserveRequest>> orders) {
+        Set<Integer> productIds = orders.stream()
+                .flatMap(List::stream)
+                .map(ReserveRequest::getProductId)
+                .collect(Collectors.toSet());
+        publishStockChanged(productIds);
+        Set<Integer> fromDb = productIds.stream().filter(productId -> !ledger.tracks(productId)).collect(Collectors.toSet());
+
+        // planned one order after another against the locked rows, each plan sees what the previous orders took
+        Map<Integer, List<WarehouseStock>> remaining = fromDb.isEmpty()
+                ? new HashMap<>()
+                : groupByProduct(repo.findAllForProductsForUpdate(fromDb));
+        Map<Integer, List<ReleaseRequest.Alloc>> allocations = new LinkedHashMap<>();
+        List<List<ReserveResponse>> results = new ArrayList<>(orders.size());
+        for (List<ReserveRequest> order : orders) {
+            results.add(reserveOrder(order, remaining, allocations));
+        }
+
+        if (!allocations.isEmpty()) {
+            if (!applyAllocations(RESERVE_SQL, allocations))
+                throw new IllegalStateException("Concurrent update detected");
+            afterCommit(() -> allocations.forEach((productId, applied) -> stockIndex.apply(productId, applied, -1)));
+        }
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public void hold(Integer orderId) {
+        Timestamp expiresAt = reservationExpiry.nextExpiry();
+        jdbcTemplate.update(HOLD_SQL, orderId, expiresAt);
+        afterCommit(() -> reservationExpiry.track(orderId, expiresAt.getTime()));
+        log.info("HOLD order={} expiresAt={}", orderId, expiresAt);
+    }
+
+    @Override
+    @Transactional
+    public void holdAll(List<Integer> orderIds) {
+        Timestamp expiresAt = reservationExpiry.nextExpiry();
+        jdbcTemplate.batchUpdate(HOLD_SQL, orderIds, orderIds.size(), (ps, orderId) -> {
+            ps.setInt(1, orderId);
+            ps.setTimestamp(2, expiresAt);
+        });
+        afterCommit(() -> orderIds.forEach(orderId -> reservationExpiry.track(orderId, expiresAt.getTime())));
+        log.info("HOLD {} orders expiresAt={}", orderIds.size(), expiresAt);
+    }
+
+    @Override
+    @Transactional
     public void confirm(Integer orderId) {
+        if (jdbcTemplate.update(CONFIRM_SQL, orderId) == 0)
+            throw new IllegalStateException("Reservation for order=" + orderId + " is no longer held");
+        afterCommit(() -> reservationExpiry.untrack(orderId));
         log.info("CONFIRM order={}", orderId);
     }
 
     @Override
     @Transactional
     public void release(ReleaseRequest req) {
-        for (var a : req.getAllocations()) {
-        var row = repo.findByWarehouseIdAndProductId(a.getWarehouseId(), req.getProductId())
-            .orElseThrow();
-        row.setQuantity(row.getQuantity() + a.getQty());
-        repo.save(row);
+        releaseAll(List.of(req));
+    }
+
+    @Override
+    @Transactional
+    public void releaseAll(List<ReleaseRequest> reqs) {
+        Set<Integer> orderIds = reqs.stream()
+                .map(ReleaseRequest::getOrderId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<Integer> alreadyReturned = orderIds.isEmpty() ? Set.of() : endHolds(orderIds);
+
+        List<ReleaseRequest> toRelease = new ArrayList<>(reqs.size());
+        for (var req : reqs) {
+            if (alreadyReturned.contains(req.getOrderId())) {
+                log.info("RELEASE skipped order={} product={}, hold already expired or released", req.getOrderId(), req.getProductId());
+            } else {
+                toRelease.add(req);
+            }
+        }
+        releaseStock(toRelease);
+    }
+
+    @Override
+    @Transactional
+    public List<Integer> releaseExpired(List<Integer> orderIds) {
+        List<Integer> expired = jdbcTemplate.query(EXPIRE_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("integer", orderIds.toArray()));
+            ps.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+        }, (rs, rowNum) -> rs.getInt("order_id"));
+        if (expired.isEmpty()) {
+            return expired;
         }
-        log.info("RELEASE order={} product={} restored={}", req.getOrderId(), req.getProductId(), req.getAllocations());
+
+        List<ReleaseRequest> reqs = new ArrayList<>();
+        for (Order order : orderRepository.findAllWithLines(expired)) {
+            reqs.addAll(ReleaseRequest.createFromOrder(order));
+        }
+        releaseStock(reqs);
+        return expired;
+    }
+
+    // ends the holds of the given orders and returns the orders whose stock was already given back
+    private Set<Integer> endHolds(Set<Integer> orderIds) {
+        List<Integer> ended = jdbcTemplate.query(END_HOLDS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", orderIds.toArray())),
+                (rs, rowNum) -> rs.getInt("order_id"));
+        afterCommit(() -> ended.forEach(reservationExpiry::untrack));
+        if (ended.size() == orderIds.size()) {
+            return Set.of();
+        }
+
+        // orders reserved before holds existed have no row and are released as before
+        Set<Integer> returned = new HashSet<>(jdbcTemplate.query(TRACKED_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", orderIds.toArray())),
+                (rs, rowNum) -> rs.getInt("order_id")));
+        ended.forEach(returned::remove);
+        return returned;
+    }
+
+    private void releaseStock(List<ReleaseRequest> reqs) {
+        publishStockChanged(reqs.stream().map(ReleaseRequest::getProductId).collect(Collectors.toSet()));
+        Map<Integer, List<ReleaseRequest.Alloc>> allocations = new LinkedHashMap<>();
+        for (var req : reqs) {
+            if (ledger.tracks(req.getProductId())) {
+                ledger.release(req.getProductId(), req.getAllocations());
+                log.info("RELEASE (ledger) order={} product={} restored={}", req.getOrderId(), req.getProductId(), req.getAllocations());
+            } else {
+                allocations.computeIfAbsent(req.getProductId(), id -> new ArrayList<>()).addAll(req.getAllocations());
+            }
+        }
+        if (allocations.isEmpty()) {
+            return;
+        }
+
+        if (!applyAllocations(RELEASE_SQL, allocations))
+            throw new IllegalStateException("Unknown warehouse stock row for products=" + allocations.keySet());
+        afterCommit(() -> allocations.forEach((productId, restored) -> stockIndex.apply(productId, restored, 1)));
+        for (var req : reqs) {
+            if (allocations.containsKey(req.getProductId())) {
+                log.info("RELEASE order={} product={} restored={}", req.getOrderId(), req.getProductId(), req.getAllocations());
+            }
+        }
+    }
+
+    private void publishStockChanged(Set<Integer> productIds) {
+        if (!productIds.isEmpty()) {
+            afterCommit(() -> eventPublisher.publishEvent(new StockChangedEvent(productIds)));
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private ReserveResponse reserveFromLedger(ReserveRequest req) {
+        List<ReleaseRequest.Alloc> applied = takeFromLedger(req);
+        if (applied == null) throw new IllegalStateException("Insufficient stock for product=" + req.getProductId());
+        releaseFromLedgerOnRollback(req.getProductId(), applied);
+
+        log.info("RESERVE (ledger) order={} product={} allocations={}", req.getOrderId(), req.getProductId(), applied);
+        return toReserveResponse(req, applied);
+    }
+
+    // null when the ledger does not have the quantity
+    private List<ReleaseRequest.Alloc> takeFromLedger(ReserveRequest req) {
+        List<ReleaseRequest.Alloc> applied;
+        do {
+            // a failed attempt only means another reservation took the stock between plan and CAS
+            var plan = allocate(ledger.snapshot(req.getProductId()), req.getQuantity());
+            if (!plan.isCanFulfill()) return null;
+            applied = toAllocs(plan);
+        } while (!ledger.tryReserve(req.getProductId(), applied));
+        return applied;
+    }
+
+    // the ledger is not part of the database transaction, so give the stock back if it rolls back
+    private void releaseFromLedgerOnRollback(Integer productId, List<ReleaseRequest.Alloc> reserved) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        ledger.release(productId, reserved);
+                    }
+                }
+            });
+        }
+    }
+
+    // all lines of one bulk order or none; remaining and allocations only change when the whole order fits
+    private List<ReserveResponse> reserveOrder(List<ReserveRequest> lines,
+                                               Map<Integer, List<WarehouseStock>> remaining,
+                                               Map<Integer, List<ReleaseRequest.Alloc>> allocations) {
+        Map<Integer, List<WarehouseStock>> planned = new HashMap<>();
+        Map<Integer, List<ReleaseRequest.Alloc>> fromLedger = new LinkedHashMap<>();
+        List<ReserveResponse> responses = new ArrayList<>(lines.size());
+        for (var req : lines) {
+            List<ReleaseRequest.Alloc> applied;
+            if (ledger.tracks(req.getProductId())) {
+                applied = takeFromLedger(req);
+                if (applied != null) fromLedger.computeIfAbsent(req.getProductId(), id -> new ArrayList<>()).addAll(applied);
+            } else {
+                List<WarehouseStock> rows = planned.getOrDefault(req.getProductId(),
+                        remaining.getOrDefault(req.getProductId(), List.of()));
+                var plan = allocate(rows, req.getQuantity());
+                applied = plan.isCanFulfill() ? toAllocs(plan) : null;
+                if (applied != null) planned.put(req.getProductId(), subtract(rows, applied));
+            }
+            if (applied == null) {
+                fromLedger.forEach(ledger::release);
+                log.info("RESERVE rejected product={} quantity={}, not enough stock left in this batch", req.getProductId(), req.getQuantity());
+                return null;
+            }
+            responses.add(toReserveResponse(req, applied));
+        }
+
+        remaining.putAll(planned);
+        fromLedger.forEach(this::releaseFromLedgerOnRollback);
+        for (ReserveResponse response : responses) {
+            if (!fromLedger.containsKey(response.getProductId())) {
+                allocations.computeIfAbsent(response.getProductId(), id -> new ArrayList<>()).addAll(response.getAllocations());
+            }
+        }
+        return responses;
+    }
+
+    private List<WarehouseStock> subtract(List<WarehouseStock> rows, List<ReleaseRequest.Alloc> applied) {
+        Map<Integer, Integer> taken = new HashMap<>();
+        for (var alloc : applied) {
+            taken.merge(alloc.getWarehouseId(), alloc.getQty(), Integer::sum);
+        }
+        List<WarehouseStock> left = new ArrayList<>(rows.size());
+        for (WarehouseStock row : rows) {
+            WarehouseStock copy = new WarehouseStock();
+            copy.setWarehouseId(row.getWarehouseId());
+            copy.setProductId(row.getProductId());
+            copy.setQuantity(row.getQuantity() - taken.getOrDefault(row.getWarehouseId(), 0));
+            left.add(copy);
+        }
+        return left;
+    }
+
+    // which warehouses to take from is up to the configured strategy, it only ever sees warehouses with stock
+    private AvailabilityResponse allocate(List<WarehouseStock> rows, int quantity) {
+        List<WarehouseStock> stocked = rows.stream()
+                .filter(ws -> ws.getQuantity() != null && ws.getQuantity() > 0)
+                .collect(Collectors.toList());
+        List<AvailabilityResponse.WarehouseAllocation> plan = allocationStrategy.allocate(stocked, quantity);
+
+        var res = new AvailabilityResponse();
+        res.setCanFulfill(plan.stream().mapToInt(AvailabilityResponse.WarehouseAllocation::getAvailable).sum() == quantity);
+        res.setAllocations(plan);
+        return res;
+    }
+
+    private List<ReleaseRequest.Alloc> toAllocs(AvailabilityResponse plan) {
+        List<ReleaseRequest.Alloc> applied = new ArrayList<>();
+        for (var a : plan.getAllocations()) {
+            var alloc = new ReleaseRequest.Alloc();
+            alloc.setWarehouseId(a.getWarehouseId());
+            alloc.setQty(a.getAvailable());
+            applied.add(alloc);
+        }
+        return applied;
+    }
+
+    private ReserveResponse toReserveResponse(ReserveRequest req, List<ReleaseRequest.Alloc> applied) {
+        var resp = new ReserveResponse();
+        resp.setOrderId(req.getOrderId());
+        resp.setProductId(req.getProductId());
+        resp.setAllocations(applied);
+        return resp;
+    }
+
+    private Map<Integer, List<WarehouseStock>> groupByProduct(List<WarehouseStock> rows) {
+        return rows.stream().collect(Collectors.groupingBy(
+                WarehouseStock::getProductId, LinkedHashMap::new, Collectors.toList()));
+    }
+
+    // true when every (product, warehouse) row was updated
+    private boolean applyAllocations(String sql, Map<Integer, List<ReleaseRequest.Alloc>> allocationsByProduct) {
+        // UPDATE ... FROM applies only one joined row per target row, so merge repeated warehouses first
+        Map<List<Integer>, Integer> merged = new LinkedHashMap<>();
+        allocationsByProduct.forEach((productId, allocations) -> {
+            for (var a : allocations) {
+                merged.merge(List.of(productId, a.getWarehouseId()), a.getQty(), Integer::sum);
+            }
+        });
+        List<Integer> productIds = new ArrayList<>();
+        List<Integer> warehouseIds = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        merged.forEach((key, qty) -> {
+            productIds.add(key.get(0));
+            warehouseIds.add(key.get(1));
+            quantities.add(qty);
+        });
+        int updated = jdbcTemplate.update(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("integer", productIds.toArray()));
+            ps.setArray(2, ps.getConnection().createArrayOf("integer", warehouseIds.toArray()));
+            ps.setArray(3, ps.getConnection().createArrayOf("integer", quantities.toArray()));
+        });
+        return updated == merged.size();
     }
 }
@@ -1,19 +1,40 @@
 package com.example.store.service.impl;
 
+import com.example.store.bank.RefundRetryQueue;
 import com.example.store.dto.request.*;
 import com.example.store.dto.response.*;
 import com.example.store.entity.*;
+import com.example.store.event.OrderCreatedEvent;
+import com.example.store.event.OrderPaidEvent;
+import com.example.store.exception.BankUnavailableException;
 import com.example.store.exception.OrderException;
 import com.example.store.exception.OrderSagaException;
+import com.example.store.idempotency.OrderIdempotencyStore;
 import com.example.store.service.*;
+import com.example.store.user.UserSummary;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.ResourceAccessException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -26,6 +47,12 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
     private final BankService bankService;
     private final DeliveryService deliveryService;
     private final EmailService emailService;
+    private final TaskExecutor sagaExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OrderIdempotencyStore idempotencyStore;
+    private final int bulkChunkSize;
+    private final RefundRetryQueue refundRetryQueue;
 
 
     public OrderOrchestratorImpl(
@@ -35,7 +62,13 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
             InventoryService inventoryService,
             BankService bankService,
             @Lazy DeliveryService deliveryService,
-            @Lazy EmailService emailService
+            @Lazy EmailService emailService,
+            @Qualifier("sagaExecutor") TaskExecutor sagaExecutor,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher,
+            OrderIdempotencyStore idempotencyStore,
+            @Value("${store.orders.bulk.chunk-size:100}") int bulkChunkSize,
+            RefundRetryQueue refundRetryQueue
     ) {
         this.orderSagaStateService = orderSagaStateService;
         this.orderService = orderService;
@@ -44,87 +77,458 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
         this.bankService = bankService;
         this.deliveryService = deliveryService;
         this.emailService = emailService;
+        this.sagaExecutor = sagaExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.idempotencyStore = idempotencyStore;
+        this.bulkChunkSize = bulkChunkSize;
+        this.refundRetryQueue = refundRetryQueue;
     }
 
     @Override
-    public OrderResponse executeOrderCreation(OrderRequest orderRequest) {
-        // 0. Create saga state
+    public OrderSagaResponse startOrderCreation(OrderRequest orderRequest) {
+        return startOrderCreation(orderRequest, null);
+    }
+
+    @Override
+    public OrderSagaResponse startOrderCreation(OrderRequest orderRequest, String idempotencyKey) {
+        // 0. Create saga state, this is the only step that runs on the request thread
         log.info("Starting order creation saga for user: {}", orderRequest.getUsername());
-        OrderSagaState saga = orderSagaStateService.initiateSaga(
-                orderRequest.getProductId(),
-                orderRequest.getQuantity()
+        List<OrderLineRequest> lines = orderRequest.resolveLines();
+        String username = orderRequest.getUsername();
+        OrderSagaState saga;
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            saga = initiateSaga(lines);
+        } else {
+            String requestHash = OrderIdempotencyStore.fingerprint(orderRequest, lines);
+            Optional<Long> existing = idempotencyStore.find(username, idempotencyKey, requestHash);
+            if (existing.isPresent()) {
+                log.info("Idempotency-Key {} retried, joining saga {}", idempotencyKey, existing.get());
+                return getSaga(existing.get());
+            }
+            // the key is bound in the saga's own transaction: a concurrent retry waits for it and then joins
+            saga = transactionTemplate.execute(status -> {
+                OrderSagaState created = initiateSaga(lines);
+                if (idempotencyStore.claim(username, idempotencyKey, requestHash, created.getId())) {
+                    return created;
+                }
+                status.setRollbackOnly();
+                return null;
+            });
+            if (saga == null) {
+                Long sagaId = idempotencyStore.find(username, idempotencyKey, requestHash)
+                        .orElseThrow(() -> new OrderSagaException("Order with this Idempotency-Key is still starting, please retry"));
+                log.info("Idempotency-Key {} raced, joining saga {}", idempotencyKey, sagaId);
+                return getSaga(sagaId);
+            }
+        }
+        OrderSagaContext context = new OrderSagaContext(orderRequest, lines, saga);
+
+        try {
+            CompletableFuture.supplyAsync(() -> runLocalSteps(context), sagaExecutor)
+                    .thenComposeAsync(this::processPayment, sagaExecutor)
+                    .thenApplyAsync(this::scheduleDelivery, sagaExecutor)
+                    .thenApplyAsync(this::completeSaga, sagaExecutor)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            handleSagaFailure(context, unwrap(error));
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            log.error("Saga executor rejected saga {}", saga.getId());
+            orderSagaStateService.updateSagaToFailed(saga, "REJECTED", "Order service is busy, please retry");
+            if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+                // nothing ran, so the retry the client is told to make must start a fresh saga
+                idempotencyStore.forget(username, idempotencyKey);
+            }
+            throw new OrderSagaException("Order service is busy, please retry");
+        }
+
+        return mapToSagaResponse(saga);
+    }
+
+    private OrderSagaState initiateSaga(List<OrderLineRequest> lines) {
+        return orderSagaStateService.initiateSaga(
+                lines.size() == 1 ? lines.get(0).getProductId() : null,
+                lines.stream().mapToInt(OrderLineRequest::getQuantity).sum()
         );
-        try{
+    }
+
+    @Override
+    public OrderSagaResponse getSaga(Long sagaId) {
+        OrderSagaState saga = orderSagaStateService.findById(sagaId)
+                .orElseThrow(() -> new OrderException("Saga not found for id: " + sagaId));
+        return mapToSagaResponse(saga);
+    }
+
+    // steps 1-4 only touch the store database, so they commit together with their saga transitions
+    // in one transaction; a failure leaves neither a reservation nor an order behind and the saga at STARTED
+    private OrderSagaContext runLocalSteps(OrderSagaContext context) {
+        return transactionTemplate.execute(status -> {
+            validateUser(context);
+            checkInventory(context);
+            reserveInventory(context);
+            createOrder(context);
+            // flushed before the bank is called
+            context.saga = orderSagaStateService.flush(context.saga);
+            return context;
+        });
+    }
 
-            // 1. Get user
-            log.info("Step 1: Validating user {}", orderRequest.getUsername());
-            User user = userService.findByUsername(orderRequest.getUsername())
-                    .orElseThrow(() -> new OrderSagaException("User not found"));
+    // 1. Get user
+    private OrderSagaContext validateUser(OrderSagaContext context) {
+        log.info("Step 1: Validating user {}", context.request.getUsername());
+        context.user = userService.findSummaryByUsername(context.request.getUsername())
+                .orElseThrow(() -> new OrderSagaException("User not found"));
 
-            saga = orderSagaStateService.updateSagaToUserValidated(saga,  "USER_VALIDATED");
+        orderSagaStateService.stage(context.saga, SagaStatus.USER_VALIDATED, "USER_VALIDATED");
+        return context;
+    }
 
-            // 2. Check inventory availability
-            log.info("Step 2: Checking inventory availability");
+    // 2. Check inventory availability
+    private OrderSagaContext checkInventory(OrderSagaContext context) {
+        log.info("Step 2: Checking inventory availability for {} lines", context.lines.size());
+        List<AvailabilityRequest> availabilityRequests = new ArrayList<>();
+        for (OrderLineRequest line : context.lines) {
             AvailabilityRequest availabilityRequest = new AvailabilityRequest();
-            availabilityRequest.setProductId(orderRequest.getProductId());
-            availabilityRequest.setQuantity(orderRequest.getQuantity());
-            AvailabilityResponse availability = inventoryService.plan(availabilityRequest);
+            availabilityRequest.setProductId(line.getProductId());
+            availabilityRequest.setQuantity(line.getQuantity());
+            availabilityRequests.add(availabilityRequest);
+        }
+        List<AvailabilityResponse> availability = inventoryService.planAll(availabilityRequests);
 
-            if (!availability.isCanFulfill()) {
-                throw new OrderException("Product not available in requested quantity");
+        for (int i = 0; i < availability.size(); i++) {
+            if (!availability.get(i).isCanFulfill()) {
+                throw new OrderException("Product " + context.lines.get(i).getProductId() + " not available in requested quantity");
             }
+        }
 
-            saga = orderSagaStateService.updateSagaToInventoryAvailable(saga,  "INVENTORY_AVAILABLE");
+        orderSagaStateService.stage(context.saga, SagaStatus.INVENTORY_AVAILABLE, "INVENTORY_AVAILABLE");
+        return context;
+    }
 
-            // 3. Reserve inventory
-            log.info("Step 3: Reserving inventory");
-            ReserveRequest reserveRequest = new ReserveRequest();
-            reserveRequest.setProductId(orderRequest.getProductId());
-            reserveRequest.setQuantity(orderRequest.getQuantity());
-            ReserveResponse reservation = inventoryService.reserve(reserveRequest);
-
-            saga = orderSagaStateService.updateSagaToInventoryReserved(saga, "INVENTORY_RESERVED");
-
-            // 4. Create order
-            log.info("Step 4: Creating order record");
-            List<Integer> expandedWarehouseIds = expandWarehouseAllocations(availability);
-            Order order = orderService.initiateOrder(user, orderRequest, expandedWarehouseIds);
-            saga = orderSagaStateService.updateSagaToOrderCreated(saga,  "ORDER_CREATED", order.getId());
-
-            // 5. Process payment through Bank service
-            log.info("Step 5: Processing payment");
-            BankPaymentResponse paymentResponse = bankService.processPayment(user, order, orderRequest);
-            saga = orderSagaStateService.updateSagaToPaymentCompleted(saga, "PAYMENT_COMPLETED", paymentResponse.getTransactionId());
-
-            // 6. Schedule delivery request
-            log.info("Step 6: Scheduling delivery");
-            deliveryService.scheduleDeliveryRequest(order, user, orderRequest, expandedWarehouseIds);
-            saga = orderSagaStateService.updateSagaToDeliveryRequested(saga,  "DELIVERY_REQUESTED");
-
-            // 7. Complete
-            log.info("Order creation saga completed successfully for order: {}", order.getId());
-            saga = orderSagaStateService.complete(saga, "COMPLETED");
-
-            return mapToOrderResponse(order);
-        } catch (Exception e){
-            log.error("Order of user {} which has product id: {} failed at step {}", orderRequest.getUsername(), orderRequest.getProductId(), saga.getCurrentStep());
-
-            compensate(saga.getId());
-            throw new OrderSagaException("Order Creation Failed: " + e.getMessage());
+    // 3. Reserve inventory
+    private OrderSagaContext reserveInventory(OrderSagaContext context) {
+        log.info("Step 3: Reserving inventory");
+        // all lines or none
+        context.reservations = inventoryService.reserveAll(toReserveRequests(context.lines));
+
+        orderSagaStateService.stage(context.saga, SagaStatus.INVENTORY_RESERVED, "INVENTORY_RESERVED");
+        return context;
+    }
+
+    // 4. Create order
+    private OrderSagaContext createOrder(OrderSagaContext context) {
+        log.info("Step 4: Creating order record");
+        context.order = orderService.initiateOrder(context.user, context.request, toOrderLines(context.reservations));
+        // the stock goes back on its own if the order is never confirmed
+        inventoryService.hold(context.order.getId());
+        // delivered to the order view once the local steps commit
+        eventPublisher.publishEvent(new OrderCreatedEvent(context.order, context.user.username()));
+        context.saga.setOrderId(context.order.getId());
+        orderSagaStateService.stage(context.saga, SagaStatus.ORDER_CREATED, "ORDER_CREATED");
+        return context;
+    }
+
+    @Override
+    public List<CompletableFuture<OrderSagaResponse>> startBulkOrderCreation(List<OrderRequest> orderRequests) {
+        log.info("Starting bulk intake of {} orders", orderRequests.size());
+        List<CompletableFuture<OrderSagaResponse>> results = new ArrayList<>(orderRequests.size());
+        orderRequests.forEach(request -> results.add(new CompletableFuture<>()));
+
+        // chunks plan and reserve one after another, the payments of earlier chunks keep running meanwhile
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+        for (int from = 0; from < orderRequests.size(); from += bulkChunkSize) {
+            int to = Math.min(orderRequests.size(), from + bulkChunkSize);
+            List<OrderRequest> chunk = orderRequests.subList(from, to);
+            List<CompletableFuture<OrderSagaResponse>> chunkResults = results.subList(from, to);
+            previous = previous.thenRunAsync(() -> startBulkChunk(chunk, chunkResults), sagaExecutor);
+        }
+        previous.exceptionally(error -> {
+            log.error("Bulk intake stopped", error);
+            results.forEach(result -> result.completeExceptionally(unwrap(error)));
+            return null;
+        });
+        return results;
+    }
+
+    private void startBulkChunk(List<OrderRequest> requests, List<CompletableFuture<OrderSagaResponse>> results) {
+        List<OrderSagaContext> contexts = new ArrayList<>(requests.size());
+        try {
+            List<List<OrderLineRequest>> lines = requests.stream().map(OrderRequest::resolveLines).collect(Collectors.toList());
+            List<OrderSagaState> sagas = orderSagaStateService.initiateSagas(
+                    lines.stream().map(l -> l.size() == 1 ? l.get(0).getProductId() : null).collect(Collectors.toList()),
+                    lines.stream().map(l -> l.stream().mapToInt(OrderLineRequest::getQuantity).sum()).collect(Collectors.toList()));
+            for (int i = 0; i < requests.size(); i++) {
+                contexts.add(new OrderSagaContext(requests.get(i), lines.get(i), sagas.get(i)));
+            }
+        } catch (RuntimeException e) {
+            log.error("Bulk chunk of {} orders could not be started", requests.size(), e);
+            results.forEach(result -> result.completeExceptionally(e));
+            return;
+        }
+
+        Map<OrderSagaContext, String> rejected = new LinkedHashMap<>();
+        List<OrderSagaContext> created;
+        try {
+            created = transactionTemplate.execute(status -> runBulkLocalSteps(contexts, rejected));
+        } catch (RuntimeException e) {
+            // nothing of the chunk was committed, every saga is still at STARTED
+            log.error("Local steps of a bulk chunk failed", e);
+            created = List.of();
+            rejected.clear();
+            contexts.forEach(context -> rejected.put(context, e.getMessage()));
+        }
+
+        for (int i = 0; i < contexts.size(); i++) {
+            OrderSagaContext context = contexts.get(i);
+            CompletableFuture<OrderSagaResponse> result = results.get(i);
+            String reason = rejected.get(context);
+            if (reason != null) {
+                handleSagaFailure(context, new OrderException(reason));
+                completeFromSaga(context, result);
+                continue;
+            }
+            try {
+                CompletableFuture.supplyAsync(() -> processPayment(context), sagaExecutor)
+                        .thenCompose(Function.identity())
+                        .thenApplyAsync(this::scheduleDelivery, sagaExecutor)
+                        .thenApplyAsync(this::completeSaga, sagaExecutor)
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                handleSagaFailure(context, unwrap(error));
+                            }
+                            completeFromSaga(context, result);
+                        });
+            } catch (RejectedExecutionException e) {
+                handleSagaFailure(context, new OrderSagaException("Order service is busy, please retry"));
+                completeFromSaga(context, result);
+            }
+        }
+        log.info("Bulk chunk: {} orders created, {} rejected", created.size(), rejected.size());
+    }
+
+    // steps 1-4 for a whole chunk in one transaction: each user is read once, all lines are planned and
+    // reserved in one pass and the orders are inserted in one batch. An order that cannot be served is
+    // left at STARTED and reported in rejected, the others go ahead
+    private List<OrderSagaContext> runBulkLocalSteps(List<OrderSagaContext> contexts, Map<OrderSagaContext, String> rejected) {
+        Map<String, Optional<UserSummary>> users = new HashMap<>();
+        List<OrderSagaContext> validated = new ArrayList<>();
+        for (OrderSagaContext context : contexts) {
+            Optional<UserSummary> user = users.computeIfAbsent(context.request.getUsername(), userService::findSummaryByUsername);
+            if (user.isEmpty()) {
+                rejected.put(context, "User not found");
+                continue;
+            }
+            context.user = user.get();
+            orderSagaStateService.stage(context.saga, SagaStatus.USER_VALIDATED, "USER_VALIDATED");
+            validated.add(context);
+        }
+
+        List<List<ReserveResponse>> reservations = inventoryService.reserveEach(validated.stream()
+                .map(context -> toReserveRequests(context.lines))
+                .collect(Collectors.toList()));
+        List<OrderSagaContext> reserved = new ArrayList<>();
+        for (int i = 0; i < validated.size(); i++) {
+            OrderSagaContext context = validated.get(i);
+            if (reservations.get(i) == null) {
+                // its staged steps are dropped so the saga row stays at STARTED like a failed single order
+                context.saga.drainPendingTransitions();
+                rejected.put(context, "Products not available in requested quantity");
+                continue;
+            }
+            context.reservations = reservations.get(i);
+            orderSagaStateService.stage(context.saga, SagaStatus.INVENTORY_AVAILABLE, "INVENTORY_AVAILABLE");
+            orderSagaStateService.stage(context.saga, SagaStatus.INVENTORY_RESERVED, "INVENTORY_RESERVED");
+            reserved.add(context);
         }
+        if (reserved.isEmpty()) {
+            return reserved;
+        }
+
+        List<Order> orders = orderService.initiateOrders(
+                reserved.stream().map(context -> context.user).collect(Collectors.toList()),
+                reserved.stream().map(context -> context.request).collect(Collectors.toList()),
+                reserved.stream().map(context -> toOrderLines(context.reservations)).collect(Collectors.toList()));
+        inventoryService.holdAll(orders.stream().map(Order::getId).collect(Collectors.toList()));
+        for (int i = 0; i < reserved.size(); i++) {
+            OrderSagaContext context = reserved.get(i);
+            context.order = orders.get(i);
+            eventPublisher.publishEvent(new OrderCreatedEvent(context.order, context.user.username()));
+            context.saga.setOrderId(context.order.getId());
+            orderSagaStateService.stage(context.saga, SagaStatus.ORDER_CREATED, "ORDER_CREATED");
+        }
+        // flushed before the bank is called
+        orderSagaStateService.flushAll(reserved.stream().map(context -> context.saga).collect(Collectors.toList()));
+        return reserved;
+    }
+
+    private void completeFromSaga(OrderSagaContext context, CompletableFuture<OrderSagaResponse> result) {
+        try {
+            result.complete(getSaga(context.saga.getId()));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    // 5. Process payment through Bank service
+    private CompletableFuture<OrderSagaContext> processPayment(OrderSagaContext context) {
+        log.info("Step 5: Processing payment");
+        // with store.bank.payment.mode=messaging no saga thread waits for the bank
+        return bankService.processPaymentAsync(context.user, context.order, context.request)
+                .exceptionallyComposeAsync(error -> resolveTimedOutPayment(context, unwrap(error)), sagaExecutor)
+                .thenApplyAsync(paymentResponse -> recordPayment(context, paymentResponse), sagaExecutor);
+    }
 
+    // a REST payment that timed out may have been committed by the bank all the same. The bank is asked which
+    // payment it holds for the order, and a found one is recorded like any other, so the saga carries on.
+    // When the answer is still unknown, or none is found yet but one may still be in flight, the order fails
+    // and the refund queue checks again later, refunding whatever turns up
+    private CompletableFuture<BankPaymentResponse> resolveTimedOutPayment(OrderSagaContext context, Throwable error) {
+        if (!(error instanceof ResourceAccessException)) {
+            return CompletableFuture.failedFuture(error);
+        }
+        Integer orderId = context.order.getId();
+        Optional<String> transactionId;
+        try {
+            transactionId = bankService.resolvePayment(orderId);
+        } catch (BankUnavailableException | ResourceAccessException e) {
+            refundRetryQueue.enqueue(orderId, "Payment outcome unknown: " + error.getMessage());
+            return CompletableFuture.failedFuture(error);
+        }
+        if (transactionId.isEmpty()) {
+            refundRetryQueue.enqueue(orderId, "Payment timed out: " + error.getMessage());
+            return CompletableFuture.failedFuture(new OrderException("Payment failed"));
+        }
+        log.warn("Payment of order {} timed out but was made as {}", orderId, transactionId.get());
+        BankPaymentResponse paymentResponse = new BankPaymentResponse();
+        paymentResponse.setStatus("SUCCESS");
+        paymentResponse.setTransactionId(transactionId.get());
+        paymentResponse.setOrderId(orderId);
+        return CompletableFuture.completedFuture(paymentResponse);
+    }
 
+    private OrderSagaContext recordPayment(OrderSagaContext context, BankPaymentResponse paymentResponse) {
+        context.saga.setBankTransactionId(paymentResponse.getTransactionId());
+        eventPublisher.publishEvent(new OrderPaidEvent(context.order.getId(), paymentResponse.getTransactionId()));
+        orderSagaStateService.stage(context.saga, SagaStatus.PAYMENT_COMPLETED, "PAYMENT_COMPLETED");
+        // flushed before delivery is requested
+        context.saga = orderSagaStateService.flush(context.saga);
+        // fails when the hold expired during a slow payment; compensation then refunds
+        inventoryService.confirm(context.order.getId());
+        return context;
     }
 
-    private void compensate(Long sagaId) {
-        log.info("Starting compensation saga for saga id: {}", sagaId);
+    // 6. Schedule delivery request
+    private OrderSagaContext scheduleDelivery(OrderSagaContext context) {
+        log.info("Step 6: Scheduling delivery");
+        // the scheduled request and DELIVERY_REQUESTED commit together
+        return transactionTemplate.execute(status -> {
+            deliveryService.scheduleDeliveryRequest(context.order, context.user);
+            orderSagaStateService.stage(context.saga, SagaStatus.DELIVERY_REQUESTED, "DELIVERY_REQUESTED");
+            context.saga = orderSagaStateService.flush(context.saga);
+            return context;
+        });
+    }
 
+    // 7. Complete
+    private OrderSagaContext completeSaga(OrderSagaContext context) {
+        log.info("Order creation saga completed successfully for order: {}", context.order.getId());
+        orderSagaStateService.stage(context.saga, SagaStatus.COMPLETED, "COMPLETED");
+        context.saga = orderSagaStateService.flush(context.saga);
+        return context;
+    }
 
-        // Step 0 - find saga, retrieve the step and update the status
+    private void handleSagaFailure(OrderSagaContext context, Throwable error) {
+        log.error("Order of user {} with {} lines failed at step {}",
+                context.request.getUsername(), context.lines.size(), context.saga.getCurrentStep(), error);
+        try {
+            compensate(context.saga.getId(), "Order Creation Failed: " + error.getMessage());
+        } catch (Exception e) {
+            log.error("Compensation of saga {} could not run", context.saga.getId(), e);
+        }
+    }
 
+    @Override
+    public void recoverSaga(Long sagaId) {
         OrderSagaState saga = orderSagaStateService.findById(sagaId)
                 .orElseThrow(() -> new OrderSagaException("Saga not found for id" + sagaId + "; required manual modification."));
-        SagaStatus lastStatus  = saga.getStatus();
+        log.info("Recovering saga {} stuck at {}", sagaId, saga.getCurrentStep());
+
+        switch (saga.getStatus()) {
+            case ORDER_CREATED:
+                // the bank call may have succeeded right before the crash, the order keeps its transaction id;
+                // a crash before the id was stored leaves only the bank knowing, so it is asked
+                Order order = orderService.findById(saga.getOrderId()).orElse(null);
+                if (order == null) {
+                    compensate(saga, SagaStatus.ORDER_CREATED, "Recovered stuck saga before payment");
+                    break;
+                }
+                String transactionId = order.getBankTransactionId();
+                if (transactionId == null) {
+                    try {
+                        transactionId = bankService.resolvePayment(order.getId()).orElse(null);
+                    } catch (BankUnavailableException | ResourceAccessException e) {
+                        // the refund queue finds out once the bank is back and refunds a payment if there was one
+                        refundRetryQueue.enqueue(order.getId(), "Recovered stuck saga, payment outcome unknown");
+                        compensate(saga, SagaStatus.ORDER_CREATED, "Recovered stuck saga before payment");
+                        break;
+                    }
+                }
+                if (transactionId == null) {
+                    compensate(saga, SagaStatus.ORDER_CREATED, "Recovered stuck saga before payment");
+                    break;
+                }
+                saga.setBankTransactionId(transactionId);
+                orderSagaStateService.stage(saga, SagaStatus.PAYMENT_COMPLETED, "PAYMENT_COMPLETED");
+                saga = orderSagaStateService.flush(saga);
+            case PAYMENT_COMPLETED:
+                Integer paidOrderId = saga.getOrderId();
+                try {
+                    inventoryService.confirm(paidOrderId);
+                } catch (IllegalStateException e) {
+                    compensate(saga, SagaStatus.PAYMENT_COMPLETED, "Recovered stuck saga after its reservation expired");
+                    break;
+                }
+                Order paidOrder = orderService.findById(paidOrderId)
+                        .orElseThrow(() -> new OrderSagaException("Order not found for id: " + paidOrderId));
+                // the id of the lazy user is known without loading it
+                UserSummary owner = userService.findSummaryById(paidOrder.getUser().getId())
+                        .orElseThrow(() -> new OrderSagaException("User not found for order: " + paidOrderId));
+                deliveryService.scheduleDeliveryRequest(paidOrder, owner);
+                orderSagaStateService.stage(saga, SagaStatus.DELIVERY_REQUESTED, "DELIVERY_REQUESTED");
+            case DELIVERY_REQUESTED:
+                orderSagaStateService.stage(saga, SagaStatus.COMPLETED, "COMPLETED");
+                orderSagaStateService.flush(saga);
+                log.info("Recovered saga {} resumed to completion", sagaId);
+                break;
+            case COMPENSATING:
+                // current step is COMPENSATING_<status the saga failed at>
+                SagaStatus failedAt = SagaStatus.valueOf(saga.getCurrentStep().substring("COMPENSATING_".length()));
+                compensate(saga, failedAt, saga.getErrorMessage());
+                break;
+            case COMPLETED:
+            case COMPENSATED:
+            case FAILED:
+                log.info("Saga {} already finished with {}", sagaId, saga.getStatus());
+                break;
+            default:
+                compensate(saga, saga.getStatus(), "Recovered stuck saga at " + saga.getCurrentStep());
+        }
+    }
+
+    // always reloads the saga by id, so it does not matter which saga thread the failing step ran on
+    private void compensate(Long sagaId, String reason) {
+        OrderSagaState saga = orderSagaStateService.findById(sagaId)
+                .orElseThrow(() -> new OrderSagaException("Saga not found for id" + sagaId + "; required manual modification."));
+        compensate(saga, saga.getStatus(), reason);
+    }
+
+    private void compensate(OrderSagaState saga, SagaStatus lastStatus, String reason) {
+        log.info("Starting compensation saga for saga id: {}", saga.getId());
+
+        // Step 0 - update the status, lastStatus decides which steps are undone
+        saga.setErrorMessage(reason);
         saga = orderSagaStateService.updateSagaToCompensating(saga, "COMPENSATING_" +  lastStatus);
         List<String> failSteps = new ArrayList<>();
         switch (lastStatus) {
@@ -161,7 +565,7 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
             saga = orderSagaStateService.updateSagaToCompensated(saga, "COMPENSATED");
         } else {
             String error = "Compensation Failed: " + String.join(", ", failSteps);
-            saga =  orderSagaStateService.updateSagaToFailed(saga,"COMPENSATION_FAILED", error);
+            saga =  orderSagaStateService.updateSagaToFailed(saga,"COMPENSATION_FAILED", reason + "; " + error);
         }
 
     }
@@ -172,11 +576,20 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
         try {
             log.info("Compensating Payment: Refund payment");
             BankRefundResponse refundResponse =  bankService.refund(saga.getOrderId());
+            if (refundResponse != null && BankRefundResponse.NOT_PAID.equals(refundResponse.getStatus())) {
+                log.info("Compensating Payment: nothing was charged");
+                return true;
+            }
             if (refundResponse == null || !"SUCCESS".equals(refundResponse.getStatus())) {
                 throw new OrderSagaException("Refund Failed for transaction id: " + refundResponse.getTransactionId());
             }
             log.info("Compensating Payment: Successful refund");
             return true;
+        } catch (BankUnavailableException | ResourceAccessException e) {
+            // the order is still cancelled and its stock released locally, the money follows once the bank is back
+            refundRetryQueue.enqueue(saga.getOrderId(), saga.getErrorMessage());
+            log.warn("Compensating Payment: bank unavailable, refund queued for order {}", saga.getOrderId());
+            return true;
         } catch (Exception e) {
             log.error("Compensating Payment Failed", e);
             return false;
@@ -202,8 +615,7 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
             log.info("Compensating Inventory: Release inventory");
             Order order = orderService.findById(saga.getOrderId())
                             .orElseThrow(() -> new OrderSagaException("Order not found for id: " + saga.getOrderId()));
-            ReleaseRequest releaseRequest = ReleaseRequest.createFromOrder(order);
-            inventoryService.release(releaseRequest);
+            inventoryService.releaseAll(ReleaseRequest.createFromOrder(order));
             log.info("Compensating Inventory: Successful release inventory");
             return true;
         }catch (Exception e) {
@@ -234,7 +646,7 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
             orderService.cancelOrder(order.getId());
 
             log.info("Releasing the inventory");
-            inventoryService.release(ReleaseRequest.createFromOrder(order));
+            inventoryService.releaseAll(ReleaseRequest.createFromOrder(order));
 
             log.info("Refund process completed successfully for order: {}", orderId);
         }catch (Exception e) {
@@ -246,16 +658,38 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
 
 
     // helper
-    private List<Integer> expandWarehouseAllocations(AvailabilityResponse availability) {
-        if (availability == null || availability.getAllocations() == null) {
+    private List<ReserveRequest> toReserveRequests(List<OrderLineRequest> lines) {
+        List<ReserveRequest> reserveRequests = new ArrayList<>();
+        for (OrderLineRequest line : lines) {
+            ReserveRequest reserveRequest = new ReserveRequest();
+            reserveRequest.setProductId(line.getProductId());
+            reserveRequest.setQuantity(line.getQuantity());
+            reserveRequests.add(reserveRequest);
+        }
+        return reserveRequests;
+    }
+
+    private List<OrderLine> toOrderLines(List<ReserveResponse> reservations) {
+        return reservations.stream()
+                .map(reservation -> OrderLine.Builder.newBuilder()
+                        .productId(reservation.getProductId())
+                        .quantity(reservation.getAllocations().stream().mapToInt(ReleaseRequest.Alloc::getQty).sum())
+                        .warehouseIds(expandWarehouseAllocations(reservation))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    // warehouse ids as actually reserved, one entry per unit
+    private List<Integer> expandWarehouseAllocations(ReserveResponse reservation) {
+        if (reservation == null || reservation.getAllocations() == null) {
             return Collections.emptyList();
         }
         List<Integer> result = new ArrayList<>();
-        for (AvailabilityResponse.WarehouseAllocation allocation : availability.getAllocations()) {
-            if (allocation == null || allocation.getWarehouseId() == null || allocation.getAvailable() == null) {
+        for (ReleaseRequest.Alloc allocation : reservation.getAllocations()) {
+            if (allocation == null || allocation.getWarehouseId() == null || allocation.getQty() == null) {
                 continue;
             }
-            int quantity = Math.max(0, allocation.getAvailable());
+            int quantity = Math.max(0, allocation.getQty());
             for (int i = 0; i < quantity; i++) {
                 result.add(allocation.getWarehouseId());
             }
@@ -263,21 +697,41 @@ public class OrderOrchestratorImpl implements OrderOrchestrator {
         return result;
     }
 
-    private OrderResponse mapToOrderResponse(Order order) {
-        return OrderResponse.builder()
-                .orderId(order.getId())
-                .username(order.getUser().getUsername())
-                .productId(order.getProductId())
-                .quantity(order.getQuantity())
-                .totalAmount(order.getTotalAmount())
-                .status(order.getStatus())
-                .bankTransactionId(order.getBankTransactionId())
-                .warehouseIds(order.getWarehouseIds())
-                .createdAt(order.getCreatedAt())
-                .updatedAt(order.getUpdatedAt())
+    private OrderSagaResponse mapToSagaResponse(OrderSagaState saga) {
+        return OrderSagaResponse.builder()
+                .sagaId(saga.getId())
+                .status(saga.getStatus())
+                .currentStep(saga.getCurrentStep())
+                .orderId(saga.getOrderId())
+                .errorMessage(saga.getErrorMessage())
+                .createdAt(saga.getCreatedAt())
+                .updatedAt(saga.getUpdatedAt())
                 .build();
     }
 
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    // state handed from one saga stage to the next; each stage may run on a different saga thread
+    private static final class OrderSagaContext {
+        private final OrderRequest request;
+        private final List<OrderLineRequest> lines;
+        private OrderSagaState saga;
+        private UserSummary user;
+        private List<ReserveResponse> reservations;
+        private Order order;
+
+        private OrderSagaContext(OrderRequest request, List<OrderLineRequest> lines, OrderSagaState saga) {
+            this.request = request;
+            this.lines = lines;
+            this.saga = saga;
+        }
+    }
+
 
 
 
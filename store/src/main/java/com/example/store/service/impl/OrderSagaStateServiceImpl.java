@@ -2,22 +2,76 @@ package com.example.store.service.impl;
 
 import com.example.store.entity.OrderSagaState;
 import com.example.store.entity.SagaStatus;
+import com.example.store.entity.SagaTransition;
 import com.example.store.exception.OrderSagaException;
 import com.example.store.repository.OrderSagaStateRepository;
 import com.example.store.service.OrderSagaStateService;
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderSagaStateServiceImpl implements OrderSagaStateService {
 
+    private static final String INSERT_TRANSITION_SQL = """
+        INSERT INTO store.saga_transition
+            (saga_id, status, step, order_id, bank_transaction_id, error_message, occurred_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    // the saga row is only a projection of the newest transition
+    private static final String APPLY_LATEST_SQL = """
+        UPDATE order_saga_state s
+        SET status = t.status,
+            current_step = t.step,
+            order_id = t.order_id,
+            bank_transaction_id = t.bank_transaction_id,
+            error_message = t.error_message,
+            updated_at = t.occurred_at
+        FROM (
+            SELECT status, step, order_id, bank_transaction_id, error_message, occurred_at
+            FROM store.saga_transition
+            WHERE saga_id = ?
+            ORDER BY transition_id DESC
+            LIMIT 1
+        ) t
+        WHERE s.id = ?
+        """;
+
+    private static final String INSERT_SAGA_SQL = """
+        INSERT INTO order_saga_state (status, current_step, product_id, quantity, created_at, updated_at)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """;
+
+    private static final String FIND_TRANSITIONS_SQL = """
+        SELECT saga_id, status, step, order_id, bank_transaction_id, error_message, occurred_at
+        FROM store.saga_transition
+        WHERE saga_id = ?
+        ORDER BY transition_id
+        """;
 
     private final OrderSagaStateRepository orderSagaStateRepository;
+    private final JdbcTemplate jdbcTemplate;
 
-    public OrderSagaStateServiceImpl(OrderSagaStateRepository orderSagaStateRepository) {
+    public OrderSagaStateServiceImpl(OrderSagaStateRepository orderSagaStateRepository, JdbcTemplate jdbcTemplate) {
         this.orderSagaStateRepository = orderSagaStateRepository;
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     @Transactional
@@ -30,7 +84,10 @@ public class OrderSagaStateServiceImpl implements OrderSagaStateService {
                     .quantity(quantity)
                     .currentStep("STARTED")
                     .build();
-            return orderSagaStateRepository.save(saga);
+            saga = orderSagaStateRepository.save(saga);
+            saga.advance(SagaStatus.STARTED, "STARTED");
+            appendTransitions(saga.drainPendingTransitions());
+            return saga;
         }catch (Exception e){
             throw new OrderSagaException("Saga initiated error");
         }
@@ -38,92 +95,141 @@ public class OrderSagaStateServiceImpl implements OrderSagaStateService {
 
     @Override
     @Transactional
-    public OrderSagaState complete(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.COMPLETED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public List<OrderSagaState> initiateSagas(List<Integer> productIds, List<Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_SAGA_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, SagaStatus.STARTED.name());
+                        ps.setString(2, "STARTED");
+                        ps.setObject(3, productIds.get(i));
+                        ps.setObject(4, quantities.get(i));
+                        ps.setTimestamp(5, now);
+                        ps.setTimestamp(6, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return productIds.size();
+                    }
+                }, keys);
+        List<Long> ids = keys.getKeyList().stream()
+                .map(key -> ((Number) key.get("id")).longValue())
+                .collect(Collectors.toList());
+
+        appendTransitions(ids.stream()
+                .map(id -> new SagaTransition(id, SagaStatus.STARTED, "STARTED", null, null, null, now.toLocalDateTime()))
+                .collect(Collectors.toList()));
+        Map<Long, OrderSagaState> sagas = orderSagaStateRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(OrderSagaState::getId, Function.identity()));
+        return ids.stream().map(sagas::get).collect(Collectors.toList());
     }
 
+    @Override
+    public void stage(OrderSagaState saga, SagaStatus status, String currentStep) {
+        saga.advance(status, currentStep);
+    }
 
     @Override
     @Transactional
-    public OrderSagaState updateSagaToCompensating(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.COMPENSATING);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);    }
+    public OrderSagaState flush(OrderSagaState saga) {
+        List<SagaTransition> transitions = saga.drainPendingTransitions();
+        if (transitions.isEmpty()) {
+            return saga;
+        }
+        appendTransitions(transitions);
+        jdbcTemplate.update(APPLY_LATEST_SQL, saga.getId(), saga.getId());
+        return saga;
+    }
 
     @Override
-    public OrderSagaState updateSagaToCompensated(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.COMPENSATED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    @Transactional
+    public void flushAll(List<OrderSagaState> sagas) {
+        List<SagaTransition> transitions = new ArrayList<>();
+        List<Long> flushed = new ArrayList<>();
+        for (OrderSagaState saga : sagas) {
+            List<SagaTransition> pending = saga.drainPendingTransitions();
+            if (!pending.isEmpty()) {
+                transitions.addAll(pending);
+                flushed.add(saga.getId());
+            }
+        }
+        if (transitions.isEmpty()) {
+            return;
+        }
+        appendTransitions(transitions);
+        jdbcTemplate.batchUpdate(APPLY_LATEST_SQL, flushed, flushed.size(), (ps, sagaId) -> {
+            ps.setLong(1, sagaId);
+            ps.setLong(2, sagaId);
+        });
     }
 
     @Override
-    public OrderSagaState updateSagaToFailed(OrderSagaState saga, String compensationFailed, String error) {
-        saga.setStatus(SagaStatus.FAILED);
-        saga.setCurrentStep(compensationFailed);
-        saga.setErrorMessage(error);
-        return orderSagaStateRepository.save(saga);
+    @Transactional
+    public OrderSagaState updateSagaToCompensating(OrderSagaState saga, String currentStep) {
+        saga.advance(SagaStatus.COMPENSATING, currentStep);
+        return flush(saga);
     }
 
-
     @Override
     @Transactional
-    public OrderSagaState updateSagaToDeliveryRequested(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.DELIVERY_REQUESTED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public OrderSagaState updateSagaToCompensated(OrderSagaState saga, String currentStep) {
+        saga.advance(SagaStatus.COMPENSATED, currentStep);
+        return flush(saga);
     }
 
-
     @Override
     @Transactional
-    public OrderSagaState updateSagaToPaymentCompleted(OrderSagaState saga, String currentStep, String transactionId) {
-        saga.setBankTransactionId(transactionId);
-        saga.setStatus(SagaStatus.PAYMENT_COMPLETED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public OrderSagaState updateSagaToFailed(OrderSagaState saga, String compensationFailed, String error) {
+        saga.setErrorMessage(error);
+        saga.advance(SagaStatus.FAILED, compensationFailed);
+        return flush(saga);
     }
 
+
     @Override
-    @Transactional
-    public OrderSagaState updateSagaToOrderCreated(OrderSagaState saga, String currentStep, Integer orderId) {
-        saga.setOrderId(orderId);
-        saga.setStatus(SagaStatus.ORDER_CREATED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public Optional<OrderSagaState> findById(Long sagaId) {
+        return orderSagaStateRepository.findById(sagaId);
     }
 
     @Override
-    @Transactional
-    public OrderSagaState updateSagaToInventoryReserved(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.INVENTORY_RESERVED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public List<SagaTransition> findTransitions(Long sagaId) {
+        return jdbcTemplate.query(FIND_TRANSITIONS_SQL, (rs, rowNum) -> new SagaTransition(
+                rs.getLong("saga_id"),
+                SagaStatus.valueOf(rs.getString("status")),
+                rs.getString("step"),
+                (Integer) rs.getObject("order_id"),
+                rs.getString("bank_transaction_id"),
+                rs.getString("error_message"),
+                rs.getTimestamp("occurred_at").toLocalDateTime()
+        ), sagaId);
     }
 
     @Override
-    @Transactional
-    public OrderSagaState updateSagaToInventoryAvailable(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.INVENTORY_AVAILABLE);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public List<Long> findStaleSagaIds(Collection<SagaStatus> statuses, LocalDateTime cutoff, Long afterId, int limit) {
+        return orderSagaStateRepository.findStaleIds(statuses, cutoff, afterId, PageRequest.of(0, limit));
     }
 
     @Override
     @Transactional
-    public OrderSagaState updateSagaToUserValidated(OrderSagaState saga, String currentStep) {
-        saga.setStatus(SagaStatus.USER_VALIDATED);
-        saga.setCurrentStep(currentStep);
-        return orderSagaStateRepository.save(saga);
+    public boolean claimStaleSaga(Long sagaId, LocalDateTime cutoff) {
+        return orderSagaStateRepository.claim(sagaId, cutoff, LocalDateTime.now()) == 1;
     }
 
 
-    @Override
-    public Optional<OrderSagaState> findById(Long sagaId) {
-        return orderSagaStateRepository.findById(sagaId);
+    // helper
+    private void appendTransitions(List<SagaTransition> transitions) {
+        jdbcTemplate.batchUpdate(INSERT_TRANSITION_SQL, transitions, transitions.size(), (ps, transition) -> {
+            ps.setLong(1, transition.getSagaId());
+            ps.setString(2, transition.getStatus().name());
+            ps.setString(3, transition.getStep());
+            ps.setObject(4, transition.getOrderId());
+            ps.setString(5, transition.getBankTransactionId());
+            ps.setString(6, transition.getErrorMessage());
+            ps.setTimestamp(7, Timestamp.valueOf(transition.getOccurredAt()));
+        });
     }
 
-
 }
@@ -1,21 +1,43 @@
 package com.example.store.service.impl;
 
+import com.example.store.converter.IntListToStringConverter;
+import com.example.store.dto.request.OrderHistoryQuery;
 import com.example.store.dto.request.OrderRequest;
+import com.example.store.dto.response.OrderHistoryResponse;
+import com.example.store.dto.response.OrderLineResponse;
 import com.example.store.dto.response.OrderResponse;
+import com.example.store.dto.response.OrderSummaryResponse;
 import com.example.store.entity.DeliveryStatus;
 import com.example.store.entity.Order;
-import com.example.store.entity.User;
+import com.example.store.entity.OrderLine;
+import com.example.store.event.OrderStatusChangedEvent;
 import com.example.store.exception.OrderException;
 import com.example.store.repository.OrderRepository;
 import com.example.store.service.BankService;
 import com.example.store.service.OrderService;
+import com.example.store.user.UserSummary;
+import com.example.store.view.OrderViewProjection;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,34 +45,143 @@ import java.util.stream.Collectors;
 public class OrderServiceImpl implements OrderService {
 
 
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 20;
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    // newest first over idx_orders_user_created (user_id, created_at, id); filters are fixed fragments with bind parameters
+    private static final String HISTORY_SQL = """
+            SELECT o.id, u.username, o.product_id, o.quantity, o.total_amount, o.status,
+                   o.bank_transaction_id, o.created_at, o.updated_at
+            FROM store.orders o
+            JOIN store.users u ON u.user_id = o.user_id
+            WHERE o.user_id = ?%s
+            ORDER BY o.created_at DESC, o.id DESC
+            LIMIT ?
+            """;
+
+    private static final String INSERT_ORDER_SQL = """
+            INSERT INTO store.orders
+                (user_id, product_id, quantity, total_amount, status, warehouse_ids, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    // a status is only applied when it does not go back in rank and the order is not final yet;
+    // found tells a stale update apart from an order that does not exist
+    private static final String UPDATE_STATUSES_SQL = """
+            WITH input AS (
+                SELECT * FROM unnest(?, ?, ?) AS u(id, status, status_rank)
+            ), applied AS (
+                UPDATE store.orders o
+                SET status = input.status, updated_at = ?
+                FROM input
+                WHERE o.id = input.id
+                  AND %1$s < %2$d
+                  AND input.status_rank >= %1$s
+                RETURNING o.id, o.user_id, o.status
+            )
+            SELECT input.id, applied.user_id, applied.status AS applied_status,
+                   EXISTS (SELECT 1 FROM store.orders WHERE id = input.id) AS found
+            FROM input
+            LEFT JOIN applied ON applied.id = input.id
+            """.formatted(statusRankSql("o.status"), DeliveryStatus.FINAL_RANK);
+
+    private static final String INSERT_ORDER_LINE_SQL = """
+            INSERT INTO store.order_lines (order_id, product_id, quantity, warehouse_ids)
+            VALUES (?, ?, ?, ?)
+            """;
+
+    private static final String USER_ID_SQL = """
+            SELECT user_id FROM store.orders WHERE id = ?
+            """;
+
     private final OrderRepository orderRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderViewProjection orderViewProjection;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IntListToStringConverter intListConverter = new IntListToStringConverter();
 
 
     public OrderServiceImpl(
-            OrderRepository orderRepository) {
+            OrderRepository orderRepository,
+            JdbcTemplate jdbcTemplate,
+            OrderViewProjection orderViewProjection,
+            ApplicationEventPublisher eventPublisher) {
         this.orderRepository = orderRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderViewProjection = orderViewProjection;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
     @Override
-    public Order initiateOrder(User user, OrderRequest request, List<Integer> expandedWarehouseIds) {
+    public Order initiateOrder(UserSummary user, OrderRequest request, List<OrderLine> lines) {
+        List<Integer> expandedWarehouseIds = lines.stream()
+                .flatMap(line -> line.getWarehouseIds().stream())
+                .collect(Collectors.toList());
         Order order = Order.Builder.newBuilder()
-                .user(user)
-                .productId(request.getProductId())
-                .quantity(request.getQuantity())
+                .user(user.toReference())
+                .productId(lines.size() == 1 ? lines.get(0).getProductId() : null)
+                .quantity(lines.stream().mapToInt(OrderLine::getQuantity).sum())
                 .totalAmount(request.getTotalAmount())
                 .status(DeliveryStatus.RECEIVED.name())
                 .warehouseIds(new ArrayList<>(expandedWarehouseIds))
+                .lines(lines)
                 .build();
         return orderRepository.save(order);
     }
 
+    @Transactional
+    @Override
+    public List<Order> initiateOrders(List<UserSummary> users, List<OrderRequest> requests, List<List<OrderLine>> lines) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_ORDER_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        List<OrderLine> orderLines = lines.get(i);
+                        ps.setInt(1, users.get(i).id());
+                        ps.setObject(2, orderLines.size() == 1 ? orderLines.get(0).getProductId() : null);
+                        ps.setInt(3, orderLines.stream().mapToInt(OrderLine::getQuantity).sum());
+                        ps.setDouble(4, requests.get(i).getTotalAmount());
+                        ps.setString(5, DeliveryStatus.RECEIVED.name());
+                        ps.setString(6, intListConverter.convertToDatabaseColumn(orderLines.stream()
+                                .flatMap(line -> line.getWarehouseIds().stream())
+                                .collect(Collectors.toList())));
+                        ps.setTimestamp(7, now);
+                        ps.setTimestamp(8, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return requests.size();
+                    }
+                }, keys);
+        List<Integer> orderIds = keys.getKeyList().stream()
+                .map(key -> ((Number) key.get("id")).intValue())
+                .collect(Collectors.toList());
+
+        List<Object[]> lineRows = new ArrayList<>();
+        for (int i = 0; i < orderIds.size(); i++) {
+            for (OrderLine line : lines.get(i)) {
+                lineRows.add(new Object[]{orderIds.get(i), line.getProductId(), line.getQuantity(),
+                        intListConverter.convertToDatabaseColumn(line.getWarehouseIds())});
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_ORDER_LINE_SQL, lineRows);
+
+        Map<Integer, Order> orders = orderRepository.findAllWithLines(orderIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        return orderIds.stream().map(orders::get).collect(Collectors.toList());
+    }
+
     @Transactional
     @Override
     public void cancelOrder(Integer orderId) {
         Order order = orderRepository.findById(orderId).orElseThrow(() -> new OrderException("Order not found"));
         order.setStatus(DeliveryStatus.CANCELLED.name());
         orderRepository.save(order);
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(orderId, order.getUser().getId(), DeliveryStatus.CANCELLED.name()));
     }
 
     @Transactional
@@ -62,21 +193,81 @@ public class OrderServiceImpl implements OrderService {
     }
 
 
+    // served from the order view; only an order the view has never seen is read from orders, once
     @Override
     public OrderResponse getOrder(Integer orderId) {
-        Order order = orderRepository.findByIdWithUser(orderId)
-                .orElseThrow(() -> new OrderException("Order not found"));
-        return mapToOrderResponse(order);
+        return orderViewProjection.find(orderId).orElseGet(() -> {
+            Order order = orderRepository.findByIdWithUser(orderId)
+                    .orElseThrow(() -> new OrderException("Order not found"));
+            OrderResponse response = mapToOrderResponse(order);
+            orderViewProjection.upsert(response, order.getUser().getId());
+            return response;
+        });
     }
 
     @Override
     public List<OrderResponse> getAllOrders(Integer userId) {
-        List<Order> orders = findByUserId(userId).orElseGet(ArrayList::new);
+        List<Order> orders = orderRepository.findAllByUserIdWithDetails(userId);
         return orders.stream()
                 .map(this::mapToOrderResponse)
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public OrderHistoryResponse getOrderHistory(Integer userId, OrderHistoryQuery query) {
+        int limit = query.getLimit() == null
+                ? DEFAULT_HISTORY_PAGE_SIZE
+                : Math.max(1, Math.min(query.getLimit(), MAX_HISTORY_PAGE_SIZE));
+
+        StringBuilder filters = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        if (query.getStatus() != null && !query.getStatus().isBlank()) {
+            filters.append(" AND o.status = ?");
+            params.add(parseStatus(query.getStatus()).name());
+        }
+        if (query.getFrom() != null) {
+            filters.append(" AND o.created_at >= ?");
+            params.add(Timestamp.valueOf(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            filters.append(" AND o.created_at < ?");
+            params.add(Timestamp.valueOf(query.getTo()));
+        }
+        if (query.getCursor() != null && !query.getCursor().isBlank()) {
+            HistoryCursor cursor = HistoryCursor.decode(query.getCursor());
+            filters.append(" AND (o.created_at, o.id) < (?, ?)");
+            params.add(Timestamp.valueOf(cursor.createdAt));
+            params.add(cursor.orderId);
+        }
+        // one extra row tells whether there is a next page
+        params.add(limit + 1);
+
+        List<OrderSummaryResponse> items = jdbcTemplate.query(HISTORY_SQL.formatted(filters), (rs, rowNum) ->
+                OrderSummaryResponse.builder()
+                        .orderId(rs.getInt("id"))
+                        .username(rs.getString("username"))
+                        .productId((Integer) rs.getObject("product_id"))
+                        .quantity(rs.getInt("quantity"))
+                        .totalAmount(rs.getDouble("total_amount"))
+                        .status(rs.getString("status"))
+                        .bankTransactionId(rs.getString("bank_transaction_id"))
+                        .createdAt(rs.getTimestamp("created_at").toLocalDateTime())
+                        .updatedAt(rs.getTimestamp("updated_at") == null ? null : rs.getTimestamp("updated_at").toLocalDateTime())
+                        .build(), params.toArray());
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            OrderSummaryResponse last = items.get(limit - 1);
+            nextCursor = new HistoryCursor(last.getCreatedAt(), last.getOrderId()).encode();
+        }
+        return OrderHistoryResponse.builder()
+                .items(new ArrayList<>(items))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
 
     @Transactional
     @Override
@@ -85,10 +276,52 @@ public class OrderServiceImpl implements OrderService {
                 .orElseThrow(() -> new OrderException("Order not found"));
         order.setStatus(status.name());
         orderRepository.save(order);
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(orderId, order.getUser().getId(), status.name()));
 
 
     }
 
+    @Transactional
+    @Override
+    public Map<Integer, Boolean> updateStatuses(Map<Integer, DeliveryStatus> statuses) {
+        if (statuses.isEmpty()) {
+            return Map.of();
+        }
+        Integer[] ids = statuses.keySet().toArray(Integer[]::new);
+        String[] names = statuses.values().stream().map(DeliveryStatus::name).toArray(String[]::new);
+        Integer[] ranks = statuses.values().stream().map(DeliveryStatus::rank).toArray(Integer[]::new);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<Integer, Boolean> applied = new HashMap<>();
+        jdbcTemplate.query(UPDATE_STATUSES_SQL,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("integer", ids));
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", names));
+                    ps.setArray(3, ps.getConnection().createArrayOf("integer", ranks));
+                    ps.setTimestamp(4, now);
+                },
+                rs -> {
+                    if (!rs.getBoolean("found")) {
+                        return;
+                    }
+                    int orderId = rs.getInt("id");
+                    String status = rs.getString("applied_status");
+                    applied.put(orderId, status != null);
+                    if (status != null) {
+                        eventPublisher.publishEvent(new OrderStatusChangedEvent(orderId, rs.getInt("user_id"), status));
+                    } else {
+                        log.info("Stale status {} for order {} rejected", statuses.get(orderId), orderId);
+                    }
+                });
+        return applied;
+    }
+
+    private static String statusRankSql(String column) {
+        StringBuilder sql = new StringBuilder("(CASE ").append(column);
+        for (DeliveryStatus status : DeliveryStatus.values()) {
+            sql.append(" WHEN '").append(status.name()).append("' THEN ").append(status.rank());
+        }
+        return sql.append(" ELSE -1 END)").toString();
+    }
 
     @Override
     public Optional<Order> findByIdWithUser(Integer orderId) {
@@ -100,12 +333,25 @@ public class OrderServiceImpl implements OrderService {
         return orderRepository.findById(orderId);
     }
 
+    @Override
+    public Optional<Integer> findUserId(Integer orderId) {
+        return jdbcTemplate.query(USER_ID_SQL, (rs, rowNum) -> rs.getInt("user_id"), orderId).stream().findFirst();
+    }
+
     @Override
     public Optional<List<Order>> findByUserId(Integer userId) {
         return orderRepository.findByUserId(userId);
     }
 
 
+    private DeliveryStatus parseStatus(String status) {
+        try {
+            return DeliveryStatus.valueOf(status.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new OrderException("Unknown order status: " + status);
+        }
+    }
+
     private OrderResponse mapToOrderResponse(Order order) {
         return OrderResponse.builder()
                 .orderId(order.getId())
@@ -116,10 +362,41 @@ public class OrderServiceImpl implements OrderService {
                 .status(order.getStatus())
                 .bankTransactionId(order.getBankTransactionId())
                 .warehouseIds(order.getWarehouseIds())
+                .lines(order.getLines().stream()
+                        .map(line -> OrderLineResponse.builder()
+                                .productId(line.getProductId())
+                                .quantity(line.getQuantity())
+                                .warehouseIds(line.getWarehouseIds())
+                                .build())
+                        .collect(Collectors.toList()))
                 .createdAt(order.getCreatedAt())
                 .updatedAt(order.getUpdatedAt())
                 .build();
     }
 
+    // position of the last order on a page, opaque to clients
+    private static final class HistoryCursor {
+        private final LocalDateTime createdAt;
+        private final int orderId;
+
+        private HistoryCursor(LocalDateTime createdAt, int orderId) {
+            this.createdAt = createdAt;
+            this.orderId = orderId;
+        }
 
+        private String encode() {
+            String raw = createdAt + "|" + orderId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static HistoryCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)), Integer.parseInt(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new OrderException("Invalid cursor");
+            }
+        }
+    }
 }
@@ -1,22 +1,63 @@
 package com.example.store.service.impl;
 
+import com.example.store.dto.request.ProductCatalogQuery;
+import com.example.store.dto.response.ProductPageResponse;
 import com.example.store.dto.response.ProductStockResponse;
+import com.example.store.dto.response.ProductStockSnapshot;
+import com.example.store.entity.WarehouseStock;
+import com.example.store.event.StockChangedEvent;
+import com.example.store.inventory.StockLedger;
 import com.example.store.service.ProductInventoryService;
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Serves the storefront stock list from an immutable in-memory snapshot.
+ * Reservations and releases only mark their products dirty; the next reader re-queries just those
+ * products and publishes a new snapshot with a new version. Readers never wait on writers, and while
+ * one reader refreshes the others keep getting the previous snapshot.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class ProductInventoryServiceImpl implements ProductInventoryService {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final StockLedger ledger;
+    private final long maxAgeMs;
+    private final Counter hits;
+    private final Counter misses;
+    // versions restart with the process, the epoch keeps old ETags from matching
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Snapshot current;
 
     private static final String STOCK_QUERY = """
             SELECT
@@ -32,34 +73,269 @@ public class ProductInventoryServiceImpl implements ProductInventoryService {
             ORDER BY p.product_id, w.warehouse_id
             """;
 
+    private static final String PRODUCT_STOCK_QUERY = """
+            SELECT
+                p.product_id,
+                p.product_name,
+                p.price,
+                w.warehouse_id,
+                w.warehouse_name,
+                ws.quantity
+            FROM store.products p
+            LEFT JOIN store.warehouse_stock ws ON ws.product_id = p.product_id
+            LEFT JOIN store.warehouses w ON w.warehouse_id = ws.warehouse_id
+            WHERE p.product_id = ANY(?)
+            ORDER BY p.product_id, w.warehouse_id
+            """;
+
+    // the filters are appended to the WHERE clause, only fixed fragments with bind parameters
+    private static final String CATALOG_QUERY = """
+            WITH page AS (
+                SELECT p.product_id, p.product_name, p.price
+                FROM store.products p
+                WHERE p.product_id > ?%s
+                ORDER BY p.product_id
+                %s
+            )
+            SELECT
+                page.product_id,
+                page.product_name,
+                page.price,
+                w.warehouse_id,
+                w.warehouse_name,
+                ws.quantity
+            FROM page
+            LEFT JOIN store.warehouse_stock ws ON ws.product_id = page.product_id
+            LEFT JOIN store.warehouses w ON w.warehouse_id = ws.warehouse_id
+            ORDER BY page.product_id, w.warehouse_id
+            """;
+
+    public ProductInventoryServiceImpl(JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       ObjectMapper objectMapper,
+                                       StockLedger ledger,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${store.products.stock-cache.max-age-ms:60000}") long maxAgeMs,
+                                       @Value("${store.products.stream.fetch-size:500}") int streamFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        // postgres only uses a cursor with a fetch size inside a transaction
+        this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingJdbcTemplate.setFetchSize(streamFetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.ledger = ledger;
+        this.maxAgeMs = maxAgeMs;
+        this.hits = Counter.builder("store.products.stock.cache")
+                .tag("result", "hit")
+                .description("Stock list requests served without a query")
+                .register(meterRegistry);
+        this.misses = Counter.builder("store.products.stock.cache")
+                .tag("result", "miss")
+                .description("Stock list requests that had to query changed products")
+                .register(meterRegistry);
+    }
+
     @Override
     public List<ProductStockResponse> getProductStockSnapshot() {
-        Map<Integer, ProductAccumulator> aggregates = new LinkedHashMap<>();
+        return getVersionedProductStock().products();
+    }
+
+    @Override
+    public ProductStockSnapshot getVersionedProductStock() {
+        Snapshot snapshot = current;
+        boolean stale = snapshot == null || System.currentTimeMillis() - snapshot.loadedAt > maxAgeMs;
+        if (!stale && dirty.isEmpty()) {
+            hits.increment();
+            return snapshot.view;
+        }
+        // someone else is refreshing, the previous snapshot is still consistent
+        if (snapshot != null && !refreshLock.tryLock()) {
+            hits.increment();
+            return snapshot.view;
+        }
+        if (snapshot == null) {
+            refreshLock.lock();
+        }
+        try {
+            misses.increment();
+            snapshot = current;
+            if (snapshot == null || System.currentTimeMillis() - snapshot.loadedAt > maxAgeMs) {
+                // products added or changed outside InventoryService show up at the latest here
+                dirty.clear();
+                current = snapshot = build(loadAll(), snapshot == null ? 1 : snapshot.version + 1, System.currentTimeMillis());
+            } else if (!dirty.isEmpty()) {
+                current = snapshot = refresh(snapshot);
+            }
+            return snapshot.view;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    @Override
+    public ProductPageResponse getProductPage(ProductCatalogQuery query) {
+        int limit = query.getLimit() == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(query.getLimit(), MAX_PAGE_SIZE));
+        List<Object> params = new ArrayList<>();
+        // one extra row tells whether there is a next page
+        String sql = catalogSql(query, params, "LIMIT " + (limit + 1));
+
+        List<ProductStockResponse> items = new ArrayList<>(limit + 1);
+        ProductRowReader reader = new ProductRowReader(ledger, items::add);
+        jdbcTemplate.query(sql, reader, params.toArray());
+        reader.finish();
+
+        Integer nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            nextCursor = items.get(limit - 1).productId();
+        }
+        return new ProductPageResponse(List.copyOf(items), nextCursor);
+    }
+
+    @Override
+    public void streamProducts(ProductCatalogQuery query, OutputStream out) throws IOException {
+        List<Object> params = new ArrayList<>();
+        String sql = catalogSql(query, params, "");
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.writeStartArray();
+        try {
+            ProductRowReader reader = new ProductRowReader(ledger, product -> {
+                try {
+                    generator.writeObject(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            readOnlyTransaction.executeWithoutResult(status -> {
+                streamingJdbcTemplate.query(sql, reader, params.toArray());
+                reader.finish();
+            });
+        } catch (UncheckedIOException e) {
+            // usually the client went away
+            throw e.getCause();
+        }
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    private String catalogSql(ProductCatalogQuery query, List<Object> params, String limitClause) {
+        StringBuilder filters = new StringBuilder();
+        params.add(query.getAfterId() == null ? 0 : query.getAfterId());
+        if (query.getName() != null && !query.getName().isBlank()) {
+            filters.append(" AND p.product_name ILIKE ?");
+            params.add("%" + query.getName().trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+        if (query.getMinPrice() != null) {
+            filters.append(" AND p.price >= ?");
+            params.add(query.getMinPrice());
+        }
+        if (query.getMaxPrice() != null) {
+            filters.append(" AND p.price <= ?");
+            params.add(query.getMaxPrice());
+        }
+        if (Boolean.TRUE.equals(query.getInStock())) {
+            filters.append(" AND EXISTS (SELECT 1 FROM store.warehouse_stock s WHERE s.product_id = p.product_id AND s.quantity > 0)");
+        }
+        return CATALOG_QUERY.formatted(filters, limitClause);
+    }
+
+    @EventListener
+    public void onStockChanged(StockChangedEvent event) {
+        dirty.addAll(event.productIds());
+    }
+
+    private Snapshot refresh(Snapshot snapshot) {
+        List<Integer> changed = new ArrayList<>(dirty);
+        dirty.removeAll(changed);
+        Map<Integer, ProductStockResponse> reloaded = load(PRODUCT_STOCK_QUERY, changed);
+
+        Map<Integer, ProductStockResponse> products = new TreeMap<>(snapshot.products);
+        for (Integer productId : changed) {
+            ProductStockResponse product = reloaded.get(productId);
+            if (product == null) {
+                products.remove(productId);
+            } else {
+                products.put(productId, product);
+            }
+        }
+        log.debug("STOCK CACHE refreshed products {}", changed);
+        return build(products, snapshot.version + 1, snapshot.loadedAt);
+    }
+
+    private Map<Integer, ProductStockResponse> loadAll() {
+        return load(STOCK_QUERY, null);
+    }
 
-        jdbcTemplate.query(STOCK_QUERY, rs -> {
+    private Map<Integer, ProductStockResponse> load(String sql, List<Integer> productIds) {
+        Map<Integer, ProductStockResponse> products = new TreeMap<>();
+        ProductRowReader reader = new ProductRowReader(ledger, product -> products.put(product.productId(), product));
+        jdbcTemplate.query(sql, ps -> {
+            if (productIds != null) {
+                ps.setArray(1, ps.getConnection().createArrayOf("integer", productIds.toArray()));
+            }
+        }, reader);
+        reader.finish();
+        return products;
+    }
+
+    private Snapshot build(Map<Integer, ProductStockResponse> products, long version, long loadedAt) {
+        return new Snapshot(products, version, loadedAt, new ProductStockSnapshot(epoch + "-" + version, List.copyOf(products.values())));
+    }
+
+    private static final class Snapshot {
+        private final Map<Integer, ProductStockResponse> products;
+        private final long version;
+        private final long loadedAt;
+        private final ProductStockSnapshot view;
+
+        private Snapshot(Map<Integer, ProductStockResponse> products, long version, long loadedAt, ProductStockSnapshot view) {
+            this.products = Collections.unmodifiableMap(products);
+            this.version = version;
+            this.loadedAt = loadedAt;
+            this.view = view;
+        }
+    }
+
+    // rows arrive ordered by product, so each product is complete once the next one starts
+    private static final class ProductRowReader implements RowCallbackHandler {
+        private final StockLedger ledger;
+        private final Consumer<ProductStockResponse> sink;
+        private ProductAccumulator accumulator;
+
+        private ProductRowReader(StockLedger ledger, Consumer<ProductStockResponse> sink) {
+            this.ledger = ledger;
+            this.sink = sink;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
             int productId = rs.getInt("product_id");
-            ProductAccumulator accumulator = aggregates.get(productId);
-            if (accumulator == null) {
-                String name = rs.getString("product_name");
-                BigDecimal price = rs.getBigDecimal("price");
-                accumulator = new ProductAccumulator(productId, name, price);
-                aggregates.put(productId, accumulator);
+            if (accumulator == null || accumulator.productId != productId) {
+                if (accumulator != null) {
+                    sink.accept(accumulator.toResponse(ledger));
+                }
+                accumulator = new ProductAccumulator(productId, rs.getString("product_name"), rs.getBigDecimal("price"));
             }
 
             Integer warehouseId = (Integer) rs.getObject("warehouse_id");
             if (warehouseId != null) {
-                String warehouseName = rs.getString("warehouse_name");
                 int quantity = rs.getInt("quantity");
                 if (rs.wasNull()) {
                     quantity = 0;
                 }
-                accumulator.addWarehouse(warehouseId, warehouseName, quantity);
+                accumulator.addWarehouse(warehouseId, rs.getString("warehouse_name"), quantity);
             }
-        });
+        }
 
-        return aggregates.values().stream()
-                .map(ProductAccumulator::toResponse)
-                .toList();
+        // hands over the last product once the query is done
+        private void finish() {
+            if (accumulator != null) {
+                sink.accept(accumulator.toResponse(ledger));
+                accumulator = null;
+            }
+        }
     }
 
     private static final class ProductAccumulator {
@@ -81,7 +357,22 @@ public class ProductInventoryServiceImpl implements ProductInventoryService {
             totalQuantity += Math.max(quantity, 0);
         }
 
-        private ProductStockResponse toResponse() {
+        // the ledger is ahead of warehouse_stock by up to one flush
+        private ProductStockResponse toResponse(StockLedger ledger) {
+            if (ledger.tracks(productId)) {
+                Map<Integer, Integer> live = new HashMap<>();
+                for (WarehouseStock ws : ledger.snapshot(productId)) {
+                    live.put(ws.getWarehouseId(), ws.getQuantity());
+                }
+                List<ProductStockResponse.WarehouseStock> overlaid = new ArrayList<>(warehouses.size());
+                int total = 0;
+                for (var ws : warehouses) {
+                    int quantity = live.getOrDefault(ws.warehouseId(), ws.quantity());
+                    overlaid.add(new ProductStockResponse.WarehouseStock(ws.warehouseId(), ws.warehouseName(), quantity));
+                    total += Math.max(quantity, 0);
+                }
+                return new ProductStockResponse(productId, productName, price, total, List.copyOf(overlaid));
+            }
             return new ProductStockResponse(
                     productId,
                     productName,
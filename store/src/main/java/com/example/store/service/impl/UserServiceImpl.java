@@ -3,6 +3,8 @@ package com.example.store.service.impl;
 import com.example.store.entity.User;
 import com.example.store.repository.UserRepository;
 import com.example.store.service.UserService;
+import com.example.store.user.UserSummary;
+import com.example.store.user.UserSummaryCache;
 import jakarta.transaction.Transactional;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -14,10 +16,13 @@ import java.util.Optional;
 public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSummaryCache userSummaryCache;
 
-    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserServiceImpl(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                           UserSummaryCache userSummaryCache) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userSummaryCache = userSummaryCache;
     }
 
     @Override
@@ -30,6 +35,16 @@ public class UserServiceImpl implements UserService {
         return userRepository.findByUsername(username);
     }
 
+    @Override
+    public Optional<UserSummary> findSummaryById(Integer userId) {
+        return userSummaryCache.findById(userId);
+    }
+
+    @Override
+    public Optional<UserSummary> findSummaryByUsername(String username) {
+        return userSummaryCache.findByUsername(username);
+    }
+
     @Override
     public User registerUser(String username,
                              String rawPassword,
@@ -48,6 +63,8 @@ public class UserServiceImpl implements UserService {
         user.setFirstName(firstName);
         user.setLastName(lastName);
         user.setBankAccountId(bankAccountId);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userSummaryCache.invalidateAfterCommit(saved.getId(), saved.getUsername());
+        return saved;
     }
 }
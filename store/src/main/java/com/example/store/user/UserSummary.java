@@ -0,0 +1,28 @@
+package com.example.store.user;
+
+import com.example.store.entity.User;
+
+// the parts of a user that orders, payments, deliveries and emails need; immutable, so safe to share from the cache
+public record UserSummary(Integer id,
+                          String username,
+                          String firstName,
+                          String lastName,
+                          String email,
+                          String bankAccountId) {
+
+    public String fullName() {
+        return firstName + " " + lastName;
+    }
+
+    // a detached User carrying these values, enough for Order.user, which never cascades to the users table
+    public User toReference() {
+        return User.Builder.newBuilder()
+                .userId(id)
+                .username(username)
+                .firstName(firstName)
+                .lastName(lastName)
+                .email(email)
+                .bankAccountId(bankAccountId)
+                .build();
+    }
+}
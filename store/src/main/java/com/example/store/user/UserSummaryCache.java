@@ -0,0 +1,135 @@
+package com.example.store.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-through cache of UserSummary by username and by id, so saga step 1, delivery requests and status
+ * emails do not load the User entity for every order.
+ * Both indexes are bounded LRUs holding the same entries; a miss reads the summary columns only and fills
+ * both. Entries live for ttl-ms, which bounds how stale a change made by another store instance can be;
+ * changes made here call invalidate.
+ */
+@Component
+@Slf4j
+public class UserSummaryCache {
+
+    private static final String BY_USERNAME_SQL = """
+            SELECT user_id, username, first_name, last_name, email, bank_account_id
+            FROM store.users
+            WHERE username = ?
+            """;
+
+    private static final String BY_ID_SQL = """
+            SELECT user_id, username, first_name, last_name, email, bank_account_id
+            FROM store.users
+            WHERE user_id = ?
+            """;
+
+    private static final RowMapper<UserSummary> SUMMARY_MAPPER = (rs, rowNum) -> new UserSummary(
+            rs.getInt("user_id"),
+            rs.getString("username"),
+            rs.getString("first_name"),
+            rs.getString("last_name"),
+            rs.getString("email"),
+            rs.getString("bank_account_id"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMs;
+    // both guarded by this
+    private final Map<String, Entry> byUsername;
+    private final Map<Integer, Entry> byId;
+
+    public UserSummaryCache(JdbcTemplate jdbcTemplate,
+                            @Value("${store.users.summary-cache.ttl-ms:300000}") long ttlMs,
+                            @Value("${store.users.summary-cache.max-entries:10000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMs = ttlMs;
+        this.byUsername = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.byId = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Optional<UserSummary> findByUsername(String username) {
+        Entry entry;
+        synchronized (this) {
+            entry = byUsername.get(username);
+        }
+        if (entry != null && entry.expiresAtMs > System.currentTimeMillis()) {
+            return Optional.of(entry.summary);
+        }
+        // unknown users are not cached, registering one needs no invalidation to be seen
+        return load(BY_USERNAME_SQL, username);
+    }
+
+    public Optional<UserSummary> findById(Integer userId) {
+        Entry entry;
+        synchronized (this) {
+            entry = byId.get(userId);
+        }
+        if (entry != null && entry.expiresAtMs > System.currentTimeMillis()) {
+            return Optional.of(entry.summary);
+        }
+        return load(BY_ID_SQL, userId);
+    }
+
+    public synchronized void invalidate(Integer userId, String username) {
+        Entry byName = username == null ? null : byUsername.remove(username);
+        Entry byKey = userId == null ? null : byId.remove(userId);
+        // the other index of a changed username or id
+        if (byName != null) {
+            byId.remove(byName.summary.id());
+        }
+        if (byKey != null) {
+            byUsername.remove(byKey.summary.username());
+        }
+    }
+
+    // inside a transaction the entry goes once it has committed, a reload in between would see the old row
+    public void invalidateAfterCommit(Integer userId, String username) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(userId, username);
+                }
+            });
+        } else {
+            invalidate(userId, username);
+        }
+    }
+
+    private Optional<UserSummary> load(String sql, Object key) {
+        Optional<UserSummary> summary = jdbcTemplate.query(sql, SUMMARY_MAPPER, key).stream().findFirst();
+        summary.ifPresent(loaded -> {
+            Entry entry = new Entry(loaded, System.currentTimeMillis() + ttlMs);
+            synchronized (this) {
+                byUsername.put(loaded.username(), entry);
+                byId.put(loaded.id(), entry);
+            }
+            log.debug("Cached summary of user {}", loaded.username());
+        });
+        return summary;
+    }
+
+    private record Entry(UserSummary summary, long expiresAtMs) {
+    }
+}
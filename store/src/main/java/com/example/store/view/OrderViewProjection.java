@@ -0,0 +1,180 @@
+package com.example.store.view;
+
+import com.example.store.converter.IntListToStringConverter;
+import com.example.store.dto.response.OrderLineResponse;
+import com.example.store.dto.response.OrderResponse;
+import com.example.store.entity.Order;
+import com.example.store.event.OrderCreatedEvent;
+import com.example.store.event.OrderPaidEvent;
+import com.example.store.event.OrderStatusChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Read model behind GET /api/orders/{orderId}: one denormalised store.order_view row per order with
+ * the username, payment id, warehouses, lines and latest delivery status.
+ * It is written only from order events after their transaction commits, so reads never compete
+ * with the saga or DeliveryCo updates for the orders row.
+ */
+@Component
+@Slf4j
+public class OrderViewProjection {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO store.order_view
+                (order_id, user_id, username, product_id, quantity, total_amount, status,
+                 bank_transaction_id, warehouse_ids, lines, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (order_id) DO UPDATE SET
+                user_id = EXCLUDED.user_id,
+                username = EXCLUDED.username,
+                product_id = EXCLUDED.product_id,
+                quantity = EXCLUDED.quantity,
+                total_amount = EXCLUDED.total_amount,
+                status = EXCLUDED.status,
+                bank_transaction_id = COALESCE(EXCLUDED.bank_transaction_id, store.order_view.bank_transaction_id),
+                warehouse_ids = EXCLUDED.warehouse_ids,
+                lines = EXCLUDED.lines,
+                created_at = EXCLUDED.created_at,
+                updated_at = EXCLUDED.updated_at
+            """;
+
+    private static final String PAID_SQL = """
+            UPDATE store.order_view SET bank_transaction_id = ?, updated_at = ? WHERE order_id = ?
+            """;
+
+    private static final String STATUS_SQL = """
+            UPDATE store.order_view SET status = ?, updated_at = ? WHERE order_id = ?
+            """;
+
+    private static final String FIND_SQL = """
+            SELECT order_id, username, product_id, quantity, total_amount, status,
+                   bank_transaction_id, warehouse_ids, lines, created_at, updated_at
+            FROM store.order_view
+            WHERE order_id = ?
+            """;
+
+    private static final TypeReference<List<OrderLineResponse>> LINES_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final IntListToStringConverter intListConverter = new IntListToStringConverter();
+
+    public OrderViewProjection(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public Optional<OrderResponse> find(Integer orderId) {
+        return jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> toResponse(rs), orderId).stream().findFirst();
+    }
+
+    // also used to backfill orders placed before the view existed
+    public void upsert(OrderResponse order, Integer userId) {
+        jdbcTemplate.update(UPSERT_SQL,
+                order.getOrderId(),
+                userId,
+                order.getUsername(),
+                order.getProductId(),
+                order.getQuantity(),
+                order.getTotalAmount(),
+                order.getStatus(),
+                order.getBankTransactionId(),
+                intListConverter.convertToDatabaseColumn(order.getWarehouseIds()),
+                writeLines(order.getLines()),
+                toTimestamp(order.getCreatedAt()),
+                toTimestamp(order.getUpdatedAt() == null ? LocalDateTime.now() : order.getUpdatedAt()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(OrderCreatedEvent event) {
+        Order order = event.order();
+        upsert(OrderResponse.builder()
+                .orderId(order.getId())
+                .username(event.username())
+                .productId(order.getProductId())
+                .quantity(order.getQuantity())
+                .totalAmount(order.getTotalAmount())
+                .status(order.getStatus())
+                .bankTransactionId(order.getBankTransactionId())
+                .warehouseIds(order.getWarehouseIds())
+                .lines(order.getLines().stream()
+                        .map(line -> OrderLineResponse.builder()
+                                .productId(line.getProductId())
+                                .quantity(line.getQuantity())
+                                .warehouseIds(line.getWarehouseIds())
+                                .build())
+                        .collect(Collectors.toList()))
+                .createdAt(order.getCreatedAt() == null ? LocalDateTime.now() : order.getCreatedAt())
+                .updatedAt(order.getUpdatedAt())
+                .build(), order.getUser().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(OrderPaidEvent event) {
+        jdbcTemplate.update(PAID_SQL, event.bankTransactionId(), Timestamp.valueOf(LocalDateTime.now()), event.orderId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(OrderStatusChangedEvent event) {
+        // an order missing here is backfilled with its current status on its first read
+        jdbcTemplate.update(STATUS_SQL, event.status(), Timestamp.valueOf(LocalDateTime.now()), event.orderId());
+    }
+
+    private OrderResponse toResponse(ResultSet rs) throws SQLException {
+        return OrderResponse.builder()
+                .orderId(rs.getInt("order_id"))
+                .username(rs.getString("username"))
+                .productId((Integer) rs.getObject("product_id"))
+                .quantity(rs.getInt("quantity"))
+                .totalAmount(rs.getDouble("total_amount"))
+                .status(rs.getString("status"))
+                .bankTransactionId(rs.getString("bank_transaction_id"))
+                .warehouseIds(intListConverter.convertToEntityAttribute(rs.getString("warehouse_ids")))
+                .lines(readLines(rs.getString("lines")))
+                .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+                .updatedAt(toLocalDateTime(rs.getTimestamp("updated_at")))
+                .build();
+    }
+
+    private String writeLines(List<OrderLineResponse> lines) {
+        try {
+            return objectMapper.writeValueAsString(lines == null ? List.of() : lines);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise order lines", e);
+        }
+    }
+
+    private List<OrderLineResponse> readLines(String json) {
+        if (json == null || json.isEmpty()) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(json, LINES_TYPE);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable order lines in order_view: {}", json, e);
+            return List.of();
+        }
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
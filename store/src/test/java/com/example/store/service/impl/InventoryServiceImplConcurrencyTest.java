@@ -0,0 +1,182 @@
+package com.example.store.service.impl;
+
+import com.example.store.dto.request.ReserveRequest;
+import com.example.store.dto.response.ReserveResponse;
+import com.example.store.entity.WarehouseStock;
+import com.example.store.repository.WarehouseStockRepository;
+import com.example.store.service.InventoryService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class InventoryServiceImplConcurrencyTest {
+
+    private static final int HOT_PRODUCT = 1001;
+    private static final int STOCK_WAREHOUSE_1 = 500;
+    private static final int STOCK_WAREHOUSE_2 = 300;
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS_PER_THREAD = 40;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private WarehouseStockRepository repo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<Integer, Integer> stockBefore = new HashMap<>();
+
+    @BeforeEach
+    void seedHotProduct() {
+        jdbc.query("SELECT warehouse_id, quantity FROM store.warehouse_stock WHERE product_id = ?",
+                rs -> {
+                    stockBefore.put(rs.getInt("warehouse_id"), rs.getInt("quantity"));
+                }, HOT_PRODUCT);
+        seedStock();
+    }
+
+    @AfterEach
+    void restoreStock() {
+        stockBefore.forEach(this::setStock);
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        Result result = hammer(quantity -> {
+            ReserveRequest request = new ReserveRequest();
+            request.setProductId(HOT_PRODUCT);
+            request.setQuantity(quantity);
+            ReserveResponse response = inventoryService.reserve(request);
+            return response.getAllocations().stream().mapToInt(a -> a.getQty()).sum();
+        });
+
+        int initial = STOCK_WAREHOUSE_1 + STOCK_WAREHOUSE_2;
+        int remaining = totalStock();
+
+        assertTrue(result.reservations() > 0, "some reservations must go through");
+        assertTrue(stock(1) >= 0 && stock(2) >= 0, "stock must never go negative");
+        assertEquals(initial - remaining, result.unitsSold(), "every unit sold must be backed by stock");
+        // far more units are asked for than exist, so the locked path has to sell all of it
+        assertEquals(0, remaining, "the hot product must sell out");
+    }
+
+    @Test
+    void lockedReserveOutpacesReadModifyWrite() throws Exception {
+        // the reservation path this service used before: unlocked plan, then one find + save per warehouse
+        Result baseline = hammer(quantity -> transactionTemplate.execute(status -> {
+            int needed = quantity;
+            List<int[]> plan = new ArrayList<>();
+            for (WarehouseStock ws : repo.findAllForProduct(HOT_PRODUCT)) {
+                int take = Math.min(Math.max(0, ws.getQuantity()), needed);
+                if (take > 0) plan.add(new int[]{ws.getWarehouseId(), take});
+                needed -= take;
+                if (needed == 0) break;
+            }
+            if (needed > 0) throw new IllegalStateException("Insufficient stock");
+            for (int[] a : plan) {
+                WarehouseStock row = repo.findByWarehouseIdAndProductId(a[0], HOT_PRODUCT).orElseThrow();
+                if (row.getQuantity() < a[1]) throw new IllegalStateException("Concurrent update detected");
+                row.setQuantity(row.getQuantity() - a[1]);
+                repo.save(row);
+            }
+            return quantity;
+        }));
+
+        seedStock();
+        Result locked = hammer(quantity -> {
+            ReserveRequest request = new ReserveRequest();
+            request.setProductId(HOT_PRODUCT);
+            request.setQuantity(quantity);
+            return inventoryService.reserve(request).getAllocations().stream().mapToInt(a -> a.getQty()).sum();
+        });
+
+        int initial = STOCK_WAREHOUSE_1 + STOCK_WAREHOUSE_2;
+        assertEquals(initial - totalStock(), locked.unitsSold(), "the locked path must not oversell");
+        // both runs make the same attempts against the same stock, so the faster run has the higher throughput
+        assertTrue(locked.elapsedNanos() < baseline.elapsedNanos(),
+                String.format("locked reserve took %d ms, read-modify-write %d ms",
+                        locked.elapsedNanos() / 1_000_000, baseline.elapsedNanos() / 1_000_000));
+    }
+
+    private Result hammer(Reservation reservation) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger unitsSold = new AtomicInteger();
+        AtomicInteger reservations = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    int quantity = 1 + (seed + i) % 3;
+                    try {
+                        unitsSold.addAndGet(reservation.reserve(quantity));
+                        reservations.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - began;
+        pool.shutdown();
+        return new Result(unitsSold.get(), reservations.get(), rejected.get(), elapsed);
+    }
+
+    private void seedStock() {
+        setStock(1, STOCK_WAREHOUSE_1);
+        setStock(2, STOCK_WAREHOUSE_2);
+    }
+
+    private void setStock(int warehouseId, int quantity) {
+        jdbc.update("UPDATE store.warehouse_stock SET quantity = ? WHERE warehouse_id = ? AND product_id = ?",
+                quantity, warehouseId, HOT_PRODUCT);
+    }
+
+    private int stock(int warehouseId) {
+        return jdbc.queryForObject("SELECT quantity FROM store.warehouse_stock WHERE warehouse_id = ? AND product_id = ?",
+                Integer.class, warehouseId, HOT_PRODUCT);
+    }
+
+    private int totalStock() {
+        return stock(1) + stock(2);
+    }
+
+    @FunctionalInterface
+    private interface Reservation {
+        int reserve(int quantity);
+    }
+
+    private record Result(int unitsSold, int reservations, int rejected, long elapsedNanos) {
+    }
+}